@@ -0,0 +1,50 @@
+package com.snowball.training.concurrent.demo.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * 对应question3 testWrite和question4 LockGranularityController的并发追加
+ * 对比分段追加的ConcurrentAppendList和两种已有List在不同线程数下的写入耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AppendListBenchmark {
+
+    @Param({"synchronizedList", "copyOnWriteArrayList", "concurrentAppendList"})
+    private String listType;
+    // 线程数量
+    @Param({"2", "8", "16", "64"})
+    private int threadCount;
+    // 每次调用追加的元素数，CopyOnWriteArrayList是O(n²)，不宜过大
+    @Param({"20000"})
+    private int loopCount;
+
+    private ForkJoinPool forkJoinPool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        forkJoinPool = new ForkJoinPool(threadCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        forkJoinPool.shutdown();
+        forkJoinPool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public int append() {
+        List<Integer> list = CopyOnWriteListBenchmark.newList(listType);
+        forkJoinPool.submit(() -> IntStream.range(0, loopCount).parallel().forEach(list::add)).join();
+        return list.size();
+    }
+}
@@ -0,0 +1,93 @@
+package com.snowball.training.concurrent.demo.benchmark;
+
+import com.snowball.training.concurrent.demo.common.DataGenerator;
+import com.snowball.training.concurrent.demo.question1.BoundedConcurrentMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * 对应question1 ConcurrentHashMapMisuseController的right/fast
+ * 每个线程都尝试把Map从itemCount-100填充到itemCount，对比锁住整个Map和预占计数两种做法的吞吐
+ * key在Trial开始前一次生成，不计入测量
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BoundedMapBenchmark {
+
+    // 线程数量
+    @Param({"10"})
+    private int threadCount;
+    // 记录数，也就是Map的容量
+    @Param({"1000"})
+    private int itemCount;
+    // 每个线程提交的填充任务数
+    @Param({"10"})
+    private int loopCount;
+    // 生成key的随机种子
+    @Param({"20200704"})
+    private long seed;
+
+    private ForkJoinPool forkJoinPool;
+    private String[] initKeys;
+    private String[][] taskKeys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        forkJoinPool = new ForkJoinPool(threadCount);
+        DataGenerator generator = new DataGenerator(seed);
+        initKeys = generator.keys(itemCount - 100);
+        // 每个填充任务最多需要itemCount个不重复的key
+        taskKeys = new String[threadCount * loopCount][];
+        for (int i = 0; i < taskKeys.length; i++) {
+            taskKeys[i] = generator.keys(itemCount);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        forkJoinPool.shutdown();
+        forkJoinPool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public int synchronizedFill() {
+        ConcurrentHashMap<String, Long> map = new ConcurrentHashMap<>(itemCount);
+        for (String key : initKeys) {
+            map.put(key, 1L);
+        }
+        forkJoinPool.submit(() -> IntStream.range(0, taskKeys.length).parallel().forEach(i -> {
+            synchronized (map) {
+                int gap = itemCount - map.size();
+                String[] keys = taskKeys[i];
+                for (int j = 0; j < gap; j++) {
+                    map.put(keys[j], 1L);
+                }
+            }
+        })).join();
+        return map.size();
+    }
+
+    @Benchmark
+    public int boundedFill() {
+        BoundedConcurrentMap<String, Long> map = new BoundedConcurrentMap<>(itemCount);
+        for (String key : initKeys) {
+            map.putIfAbsent(key, 1L);
+        }
+        forkJoinPool.submit(() -> IntStream.range(0, taskKeys.length).parallel().forEach(i -> {
+            int gap = map.remainingCapacity();
+            String[] keys = taskKeys[i];
+            for (int j = 0; j < gap && !map.isFull(); j++) {
+                map.putIfAbsent(keys[j], 1L);
+            }
+        })).join();
+        return map.size();
+    }
+}
@@ -0,0 +1,92 @@
+package com.snowball.training.concurrent.demo.benchmark;
+
+import com.snowball.training.concurrent.demo.question1.ConcurrentLongCounterMap;
+import com.snowball.training.concurrent.demo.question1.LocalCountTask;
+import com.snowball.training.concurrent.demo.question1.LongCounterHashMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 对应question1 ConcurrentHashMapPerformanceController的normalUse/goodUse/primitiveUse/localMergeUse
+ * 线程池在Trial级别创建，避免把线程创建的开销算进每次调用
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConcurrentHashMapBenchmark {
+
+    // 线程数量
+    @Param({"10"})
+    private int threadCount;
+    // 记录数
+    @Param({"1000"})
+    private int itemCount;
+    // 循环次数
+    @Param({"10000000"})
+    private int loopCount;
+
+    private ForkJoinPool forkJoinPool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        forkJoinPool = new ForkJoinPool(threadCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        forkJoinPool.shutdown();
+        forkJoinPool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public Map<String, Long> normalUse() {
+        ConcurrentHashMap<String, Long> freqs = new ConcurrentHashMap<>(itemCount);
+        forkJoinPool.submit(() -> IntStream.rangeClosed(1, loopCount).parallel().forEach(i -> {
+            String key = "item" + ThreadLocalRandom.current().nextInt(itemCount);
+            synchronized (freqs) {
+                if (freqs.containsKey(key)) {
+                    freqs.put(key, freqs.get(key) + 1);
+                } else {
+                    freqs.put(key, 1L);
+                }
+            }
+        })).join();
+        return freqs;
+    }
+
+    @Benchmark
+    public Map<String, Long> goodUse() {
+        ConcurrentHashMap<String, LongAdder> freqs = new ConcurrentHashMap<>(itemCount);
+        forkJoinPool.submit(() -> IntStream.rangeClosed(1, loopCount).parallel().forEach(i -> {
+            String key = "item" + ThreadLocalRandom.current().nextInt(itemCount);
+            freqs.computeIfAbsent(key, k -> new LongAdder()).increment();
+        })).join();
+        return freqs.entrySet().stream().collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue().longValue()));
+    }
+
+    @Benchmark
+    public ConcurrentLongCounterMap primitiveUse() {
+        ConcurrentLongCounterMap freqs = new ConcurrentLongCounterMap(itemCount);
+        forkJoinPool.submit(() -> IntStream.rangeClosed(1, loopCount).parallel().forEach(i ->
+                freqs.increment(ThreadLocalRandom.current().nextInt(itemCount))
+        )).join();
+        return freqs;
+    }
+
+    @Benchmark
+    public LongCounterHashMap localMergeUse() {
+        int threshold = Math.max(1, loopCount / (threadCount * 4));
+        return forkJoinPool.invoke(new LocalCountTask(0, loopCount, threshold, itemCount));
+    }
+}
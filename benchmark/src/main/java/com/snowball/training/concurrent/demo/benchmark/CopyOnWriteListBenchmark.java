@@ -0,0 +1,89 @@
+package com.snowball.training.concurrent.demo.benchmark;
+
+import com.snowball.training.concurrent.demo.common.DataGenerator;
+import com.snowball.training.concurrent.demo.question3.ConcurrentAppendList;
+import com.snowball.training.concurrent.demo.question3.WriteCombiningCopyOnWriteList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * 对应question3 CopyOnWriteListMisuseController的testWrite/testRead
+ * listType决定参与对比的List实现
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CopyOnWriteListBenchmark {
+
+    @Param({"copyOnWriteArrayList", "synchronizedList", "writeCombiningList", "concurrentAppendList"})
+    private String listType;
+    // 线程数量
+    @Param({"8"})
+    private int threadCount;
+    // 读测试时List中预置的元素数
+    @Param({"1000000"})
+    private int itemCount;
+    // 每次调用的读写次数
+    @Param({"100000"})
+    private int loopCount;
+
+    private ForkJoinPool forkJoinPool;
+    private List<Integer> readList;
+
+    static List<Integer> newList(String listType) {
+        switch (listType) {
+            case "copyOnWriteArrayList":
+                return new CopyOnWriteArrayList<>();
+            case "synchronizedList":
+                return Collections.synchronizedList(new ArrayList<>());
+            case "writeCombiningList":
+                return new WriteCombiningCopyOnWriteList<>();
+            case "concurrentAppendList":
+                return new ConcurrentAppendList<>();
+            default:
+                throw new IllegalArgumentException("unknown listType:" + listType);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        forkJoinPool = new ForkJoinPool(threadCount);
+        readList = newList(listType);
+        readList.addAll(Arrays.asList(DataGenerator.sequence(1, itemCount)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        forkJoinPool.shutdown();
+        forkJoinPool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public int write() {
+        List<Integer> list = newList(listType);
+        forkJoinPool.submit(() -> IntStream.rangeClosed(1, loopCount).parallel()
+                .forEach(__ -> list.add(ThreadLocalRandom.current().nextInt(loopCount)))).join();
+        return list.size();
+    }
+
+    @Benchmark
+    public long read() {
+        List<Integer> list = readList;
+        int count = list.size();
+        return forkJoinPool.submit(() -> IntStream.rangeClosed(1, loopCount).parallel()
+                .mapToLong(__ -> list.get(ThreadLocalRandom.current().nextInt(count)))
+                .sum()).join();
+    }
+}
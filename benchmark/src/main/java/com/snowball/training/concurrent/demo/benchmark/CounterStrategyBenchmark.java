@@ -0,0 +1,43 @@
+package com.snowball.training.concurrent.demo.benchmark;
+
+import com.snowball.training.concurrent.demo.question4.counter.ConcurrentCounter;
+import com.snowball.training.concurrent.demo.question4.counter.CounterStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对应question4 LockScopeController的/q4/counter，对比各种CounterStrategy的单次累加开销
+ * 线程数用JMH的-t参数调整
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+public class CounterStrategyBenchmark {
+
+    @Param({"MONITOR", "REENTRANT_LOCK", "FAIR_REENTRANT_LOCK", "STAMPED_LOCK",
+            "ATOMIC_LONG", "LONG_ADDER", "FIELD_UPDATER", "SHARDED"})
+    private CounterStrategy strategy;
+
+    private ConcurrentCounter counter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        counter = strategy.create();
+    }
+
+    @Benchmark
+    public void increment() {
+        counter.increment();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long sum() {
+        return counter.sum();
+    }
+}
@@ -0,0 +1,109 @@
+package com.snowball.training.concurrent.demo.benchmark;
+
+import com.snowball.training.concurrent.demo.common.PaddedAtomicLong;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * 对应question4中Data的counter这类相邻的热点计数器，Interesting的a/b见FalseSharingPairBenchmark
+ * 每个线程只写自己的计数器，没有逻辑上的共享，差别只在于计数器在内存中是否挨在一起
+ * adjacentArray：AtomicLongArray中相邻的元素，8个计数器挤在一个缓存行
+ * atomicLongs：连续分配的AtomicLong对象，每个16字节，同样会落在同一个缓存行
+ * stridedArray：AtomicLongArray中每隔16个元素放一个计数器
+ * paddedAtomicLongs：PaddedAtomicLong，每个计数器独占缓存行
+ * 各种写法的字段布局和对象地址用FalseSharingLayout打印
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FalseSharingBenchmark {
+
+    private static final int STRIDE = 16;
+
+    @Param({"adjacentArray", "atomicLongs", "stridedArray", "paddedAtomicLongs"})
+    private String layout;
+    // 线程数量，每个线程一个计数器
+    @Param({"2", "4", "8", "16"})
+    private int threadCount;
+    // 每个线程累加的次数
+    @Param({"1000000"})
+    private int loopCount;
+
+    private ForkJoinPool forkJoinPool;
+    private AtomicLongArray array;
+    private AtomicLong[] atomicLongs;
+    private PaddedAtomicLong[] paddedAtomicLongs;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        forkJoinPool = new ForkJoinPool(threadCount);
+        switch (layout) {
+            case "adjacentArray":
+                array = new AtomicLongArray(threadCount);
+                break;
+            case "stridedArray":
+                array = new AtomicLongArray(threadCount * STRIDE);
+                break;
+            case "atomicLongs":
+                atomicLongs = new AtomicLong[threadCount];
+                for (int i = 0; i < threadCount; i++) {
+                    atomicLongs[i] = new AtomicLong();
+                }
+                break;
+            case "paddedAtomicLongs":
+                paddedAtomicLongs = new PaddedAtomicLong[threadCount];
+                for (int i = 0; i < threadCount; i++) {
+                    paddedAtomicLongs[i] = new PaddedAtomicLong();
+                }
+                FalseSharingLayout.checkPadding(PaddedAtomicLong.class);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown layout:" + layout);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        forkJoinPool.shutdown();
+        forkJoinPool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public void increment() {
+        forkJoinPool.submit(() -> IntStream.range(0, threadCount).parallel().forEach(this::incrementOwn)).join();
+    }
+
+    private void incrementOwn(int index) {
+        switch (layout) {
+            case "adjacentArray":
+                for (int i = 0; i < loopCount; i++) {
+                    array.incrementAndGet(index);
+                }
+                break;
+            case "stridedArray":
+                for (int i = 0; i < loopCount; i++) {
+                    array.incrementAndGet(index * STRIDE);
+                }
+                break;
+            case "atomicLongs":
+                AtomicLong atomicLong = atomicLongs[index];
+                for (int i = 0; i < loopCount; i++) {
+                    atomicLong.incrementAndGet();
+                }
+                break;
+            default:
+                PaddedAtomicLong padded = paddedAtomicLongs[index];
+                for (int i = 0; i < loopCount; i++) {
+                    padded.incrementAndGet();
+                }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.snowball.training.concurrent.demo.benchmark;
+
+import com.snowball.training.concurrent.demo.common.PaddedAtomicInteger;
+import com.snowball.training.concurrent.demo.common.PaddedAtomicLong;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.FieldLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 用JOL打印FalseSharingBenchmark中各种写法的字段布局和对象地址，并检查填充是否生效
+ * java -cp target/benchmarks.jar com.snowball.training.concurrent.demo.benchmark.FalseSharingLayout
+ * 字段布局和JDK版本、是否开启压缩指针有关，换JDK后应当重新运行一次
+ */
+public class FalseSharingLayout {
+
+    private static final int PADDING_BYTES = 56;
+
+    public static void main(String[] args) {
+        System.out.println(ClassLayout.parseClass(FalseSharingPairBenchmark.Unpadded.class).toPrintable());
+        System.out.println(ClassLayout.parseClass(AtomicLong.class).toPrintable());
+        System.out.println(ClassLayout.parseClass(PaddedAtomicLong.class).toPrintable());
+        System.out.println(ClassLayout.parseClass(PaddedAtomicInteger.class).toPrintable());
+
+        AtomicLong[] atomicLongs = new AtomicLong[4];
+        PaddedAtomicLong[] paddedAtomicLongs = new PaddedAtomicLong[4];
+        for (int i = 0; i < 4; i++) {
+            atomicLongs[i] = new AtomicLong();
+            paddedAtomicLongs[i] = new PaddedAtomicLong();
+        }
+        System.out.println(GraphLayout.parseInstance((Object[]) atomicLongs).toPrintable());
+        System.out.println(GraphLayout.parseInstance((Object[]) paddedAtomicLongs).toPrintable());
+
+        checkPadding(PaddedAtomicLong.class);
+        checkPadding(PaddedAtomicInteger.class);
+        System.out.println("padding ok");
+    }
+
+    /**
+     * value前后的填充字段(p开头)各自至少要有56字节，否则value可能和相邻对象或对象头后的其他字段落在同一个缓存行
+     */
+    static void checkPadding(Class<?> type) {
+        FieldLayout value = null;
+        for (FieldLayout field : ClassLayout.parseClass(type).fields()) {
+            if (field.name().equals("value")) {
+                value = field;
+            }
+        }
+        if (value == null) {
+            throw new IllegalStateException(type.getName() + " has no value field");
+        }
+        long before = 0;
+        long after = 0;
+        for (FieldLayout field : ClassLayout.parseClass(type).fields()) {
+            if (field.name().startsWith("p")) {
+                if (field.offset() < value.offset()) {
+                    before += field.size();
+                } else {
+                    after += field.size();
+                }
+            }
+        }
+        if (before < PADDING_BYTES || after < PADDING_BYTES) {
+            throw new IllegalStateException(String.format("%s.value at offset %d has %d bytes of padding before and %d after, need %d",
+                    type.getName(), value.offset(), before, after, PADDING_BYTES));
+        }
+    }
+}
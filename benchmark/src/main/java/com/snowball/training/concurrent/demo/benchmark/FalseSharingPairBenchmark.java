@@ -0,0 +1,71 @@
+package com.snowball.training.concurrent.demo.benchmark;
+
+import com.snowball.training.concurrent.demo.common.PaddedAtomicInteger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对应question4中Interesting的a/b：两个线程分别只写a和只写b，逻辑上互不相关
+ * unpadded：和Interesting一样相邻声明的两个volatile int，落在同一个缓存行，每次写都会让对方的缓存行失效
+ * padded：a、b各是一个PaddedAtomicInteger，各自独占缓存行
+ * 每个字段只有一个写线程，两种写法都和Interesting.add一样是一次volatile读加一次volatile写，不用CAS
+ * 同一个@Group中的两个方法同时运行，结果中的writeA/writeB是各自的吞吐量；单核机器上看不出伪共享的差别
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FalseSharingPairBenchmark {
+
+    // 和Interesting中一样相邻声明的两个volatile字段
+    @State(Scope.Group)
+    public static class Unpadded {
+        volatile int a = 1;
+        volatile int b = 1;
+    }
+
+    @State(Scope.Group)
+    public static class Padded {
+        final PaddedAtomicInteger a = new PaddedAtomicInteger(1);
+        final PaddedAtomicInteger b = new PaddedAtomicInteger(1);
+
+        @Setup(Level.Trial)
+        public void checkLayout() {
+            FalseSharingLayout.checkPadding(PaddedAtomicInteger.class);
+        }
+    }
+
+    @Benchmark
+    @Group("unpadded")
+    @GroupThreads(1)
+    public int writeA(Unpadded pair) {
+        return ++pair.a;
+    }
+
+    @Benchmark
+    @Group("unpadded")
+    @GroupThreads(1)
+    public int writeB(Unpadded pair) {
+        return ++pair.b;
+    }
+
+    @Benchmark
+    @Group("padded")
+    @GroupThreads(1)
+    public int writeA(Padded pair) {
+        int next = pair.a.get() + 1;
+        pair.a.set(next);
+        return next;
+    }
+
+    @Benchmark
+    @Group("padded")
+    @GroupThreads(1)
+    public int writeB(Padded pair) {
+        int next = pair.b.get() + 1;
+        pair.b.set(next);
+        return next;
+    }
+}
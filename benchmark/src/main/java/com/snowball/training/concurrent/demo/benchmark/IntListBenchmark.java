@@ -0,0 +1,50 @@
+package com.snowball.training.concurrent.demo.benchmark;
+
+import com.snowball.training.concurrent.demo.common.DataGenerator;
+import com.snowball.training.concurrent.demo.question3.CopyOnWriteIntList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * 对应question3 testRead，对比装箱的CopyOnWriteArrayList和int[]实现的CopyOnWriteIntList的随机读
+ * 内存占用可以加-prof gc或者看Controller返回的footprintBytes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+public class IntListBenchmark {
+
+    // List中预置的元素数
+    @Param({"1000000"})
+    private int itemCount;
+
+    private List<Integer> boxedList;
+    private CopyOnWriteIntList intList;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        boxedList = new CopyOnWriteArrayList<>(Arrays.asList(DataGenerator.sequence(1, itemCount)));
+        intList = new CopyOnWriteIntList();
+        intList.addAll(IntStream.rangeClosed(1, itemCount).toArray());
+    }
+
+    @Benchmark
+    public int boxedRead() {
+        return boxedList.get(ThreadLocalRandom.current().nextInt(itemCount));
+    }
+
+    @Benchmark
+    public int intRead() {
+        return intList.get(ThreadLocalRandom.current().nextInt(itemCount));
+    }
+}
@@ -0,0 +1,135 @@
+package com.snowball.training.concurrent.demo.benchmark;
+
+import com.snowball.training.concurrent.demo.question4.LockFreeInventory;
+import com.snowball.training.concurrent.demo.question4.StripedLockManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+/**
+ * 对应question4 DeadLockController的right4/fast4
+ * 每次调用下ORDERS个订单，每个订单随机3件商品，结果是每秒下单数
+ * sortedItemLocks：每件商品一把锁，按名称排序后逐个tryLock，和right4一致
+ * stripedLocks：StripedLockManager按锁下标顺序加锁
+ * lockFree：LockFreeInventory乐观读加多字CAS，冲突时重试
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(OrderLockBenchmark.ORDERS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OrderLockBenchmark {
+
+    static final int ORDERS = 1000;
+
+    // 商品数量
+    @Param({"10", "1000", "100000"})
+    private int catalogSize;
+    // 线程数量
+    @Param({"2", "8", "32"})
+    private int threadCount;
+    // StripedLockManager的锁数量
+    @Param({"64"})
+    private int stripes;
+
+    private ForkJoinPool forkJoinPool;
+    private Item[] items;
+    private StripedLockManager lockManager;
+    private LockFreeInventory inventory;
+
+    static class Item {
+        final String name;
+        final int id;
+        int remaining = Integer.MAX_VALUE;
+        final ReentrantLock lock = new ReentrantLock();
+
+        Item(String name, int id) {
+            this.name = name;
+            this.id = id;
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        forkJoinPool = new ForkJoinPool(threadCount);
+        items = new Item[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            items[i] = new Item("item" + i, i);
+        }
+        lockManager = new StripedLockManager(stripes);
+        inventory = new LockFreeInventory(catalogSize, Integer.MAX_VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        forkJoinPool.shutdown();
+        forkJoinPool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private Item[] createCart() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new Item[]{items[random.nextInt(catalogSize)], items[random.nextInt(catalogSize)], items[random.nextInt(catalogSize)]};
+    }
+
+    @Benchmark
+    public long sortedItemLocks() {
+        return forkJoinPool.submit(() -> IntStream.range(0, ORDERS).parallel().filter(i -> {
+            Item[] cart = createCart();
+            Arrays.sort(cart, Comparator.comparing(Item::getName));
+            ReentrantLock[] locked = new ReentrantLock[cart.length];
+            int count = 0;
+            try {
+                for (Item item : cart) {
+                    if (!item.lock.tryLock(10, TimeUnit.SECONDS)) {
+                        return false;
+                    }
+                    locked[count++] = item.lock;
+                }
+                for (Item item : cart) {
+                    item.remaining--;
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                for (int j = 0; j < count; j++) {
+                    locked[j].unlock();
+                }
+            }
+        }).count()).join();
+    }
+
+    @Benchmark
+    public long stripedLocks() {
+        return forkJoinPool.submit(() -> IntStream.range(0, ORDERS).parallel().filter(i -> {
+            Item[] cart = createCart();
+            try (StripedLockManager.Guard ignored = lockManager.lockAll(cart[0].id, cart[1].id, cart[2].id)) {
+                for (Item item : cart) {
+                    item.remaining--;
+                }
+            }
+            return true;
+        }).count()).join();
+    }
+
+    @Benchmark
+    public long lockFree() {
+        return forkJoinPool.submit(() -> IntStream.range(0, ORDERS).parallel().filter(i -> {
+            Item[] cart = createCart();
+            return inventory.order(cart[0].id, cart[1].id, cart[2].id);
+        }).count()).join();
+    }
+}
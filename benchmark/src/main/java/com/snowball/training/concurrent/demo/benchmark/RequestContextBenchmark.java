@@ -0,0 +1,100 @@
+package com.snowball.training.concurrent.demo.benchmark;
+
+import com.snowball.training.concurrent.demo.common.RequestContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对应question2，对比ThreadLocal和RequestContext的读写开销
+ * request*模拟一次完整请求：绑定、写入、读取、清理，配合-prof gc可以看到每次请求的分配量
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RequestContextBenchmark {
+
+    // 每个请求写入的上下文变量数
+    @Param({"1", "8"})
+    private int slotCount;
+
+    private ThreadLocal<Integer>[] threadLocals;
+    private RequestContext.Key<Integer>[] keys;
+    private Integer value = 1000;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        threadLocals = new ThreadLocal[slotCount];
+        keys = new RequestContext.Key[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            threadLocals[i] = new ThreadLocal<>();
+            keys[i] = RequestContext.newKey("key" + i);
+        }
+    }
+
+    @Benchmark
+    public int threadLocalRequest() {
+        int sum = 0;
+        for (ThreadLocal<Integer> threadLocal : threadLocals) {
+            threadLocal.set(value);
+        }
+        try {
+            for (ThreadLocal<Integer> threadLocal : threadLocals) {
+                sum += threadLocal.get();
+            }
+        } finally {
+            for (ThreadLocal<Integer> threadLocal : threadLocals) {
+                threadLocal.remove();
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int requestContextRequest() {
+        int sum = 0;
+        try (RequestContext.Scope ignored = RequestContext.open()) {
+            for (RequestContext.Key<Integer> key : keys) {
+                RequestContext.set(key, value);
+            }
+            for (RequestContext.Key<Integer> key : keys) {
+                sum += RequestContext.get(key);
+            }
+        }
+        return sum;
+    }
+
+    @State(Scope.Thread)
+    public static class Bound {
+        ThreadLocal<Integer> threadLocal = new ThreadLocal<>();
+        RequestContext.Key<Integer> key = RequestContext.newKey("bound");
+        RequestContext.Scope scope;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            threadLocal.set(1000);
+            scope = RequestContext.open();
+            RequestContext.set(key, 1000);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            threadLocal.remove();
+            scope.close();
+        }
+    }
+
+    @Benchmark
+    public Integer threadLocalGet(Bound bound) {
+        return bound.threadLocal.get();
+    }
+
+    @Benchmark
+    public Integer requestContextGet(Bound bound) {
+        return RequestContext.get(bound.key);
+    }
+}
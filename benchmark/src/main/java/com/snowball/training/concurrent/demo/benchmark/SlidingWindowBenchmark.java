@@ -0,0 +1,65 @@
+package com.snowball.training.concurrent.demo.benchmark;
+
+import com.snowball.training.concurrent.demo.question1.SlidingWindowCounter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对应question1 SlidingWindowController，对比滑动窗口计数器和LongAdder单次累加的开销
+ * 线程数用JMH的-t参数调整
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+public class SlidingWindowBenchmark {
+
+    // 桶的时长，越短轮转越频繁
+    @Param({"1000"})
+    private long bucketMillis;
+    @Param({"60"})
+    private int bucketCount;
+
+    private LongAdder longAdder;
+    private SlidingWindowCounter slidingWindowCounter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        longAdder = new LongAdder();
+        slidingWindowCounter = new SlidingWindowCounter(bucketCount, bucketMillis);
+    }
+
+    @Benchmark
+    public void longAdder() {
+        longAdder.increment();
+    }
+
+    @Benchmark
+    public void slidingWindow() {
+        slidingWindowCounter.increment();
+    }
+
+    /**
+     * 时间戳由调用方传入，去掉读时钟的开销；每轮迭代内时间戳固定，不会轮转，只剩定位桶和累加的成本
+     * 轮转的成本要看slidingWindow，bucketMillis调小时轮转更频繁
+     */
+    @Benchmark
+    public void slidingWindowGivenTime(ThreadClock threadClock) {
+        slidingWindowCounter.add(threadClock.nowMillis, 1L);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadClock {
+        long nowMillis;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            nowMillis = System.currentTimeMillis();
+        }
+    }
+}
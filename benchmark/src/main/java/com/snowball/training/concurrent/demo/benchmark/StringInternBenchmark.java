@@ -0,0 +1,76 @@
+package com.snowball.training.concurrent.demo.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 对应question6 IntAndStringEqualController的internperformance
+ * 对比String.intern、不做去重以及基于ConcurrentHashMap的手工去重
+ * 和字符串常量池一样，mapIntern使用的Map在整个Trial中保留，第二轮之后都是命中
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-XX:StringTableSize=1000003")
+public class StringInternBenchmark {
+
+    // 线程数量，1表示和Controller一样顺序执行
+    @Param({"1"})
+    private int threadCount;
+    // 每次调用生成的字符串数
+    @Param({"1000000"})
+    private int size;
+
+    private ForkJoinPool forkJoinPool;
+    private ConcurrentHashMap<String, String> pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        forkJoinPool = new ForkJoinPool(threadCount);
+        pool = new ConcurrentHashMap<>(size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        forkJoinPool.shutdown();
+        forkJoinPool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private IntStream range() {
+        IntStream stream = IntStream.rangeClosed(1, size);
+        return threadCount > 1 ? stream.parallel() : stream;
+    }
+
+    @Benchmark
+    public List<String> intern() {
+        return forkJoinPool.submit(() -> range()
+                .mapToObj(i -> String.valueOf(i).intern())
+                .collect(Collectors.toList())).join();
+    }
+
+    @Benchmark
+    public List<String> noIntern() {
+        return forkJoinPool.submit(() -> range()
+                .mapToObj(String::valueOf)
+                .collect(Collectors.toList())).join();
+    }
+
+    @Benchmark
+    public List<String> mapIntern() {
+        return forkJoinPool.submit(() -> range()
+                .mapToObj(i -> {
+                    String s = String.valueOf(i);
+                    String existing = pool.putIfAbsent(s, s);
+                    return existing == null ? s : existing;
+                })
+                .collect(Collectors.toList())).join();
+    }
+}
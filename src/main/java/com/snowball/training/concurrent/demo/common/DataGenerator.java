@@ -0,0 +1,117 @@
+package com.snowball.training.concurrent.demo.common;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 可复现的模拟数据生成器
+ * 第index个元素只由seed和index决定(splitmix64)，并行填充时结果和顺序无关；数据直接写入预分配的数组，不经过装箱的Stream
+ * 每次批量生成会从游标上占用一段连续的index，同一个生成器多次调用得到的是互不重复的数据
+ */
+public class DataGenerator {
+
+    public static final long DEFAULT_SEED = 20200704L;
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long seed;
+    private final AtomicLong cursor = new AtomicLong();
+
+    public DataGenerator() {
+        this(DEFAULT_SEED);
+    }
+
+    public DataGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public long longAt(long index) {
+        long z = seed + (index + 1) * GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * [0, bound)范围内的整数
+     */
+    public int intAt(long index, int bound) {
+        return (int) (((longAt(index) >>> 33) * bound) >>> 31);
+    }
+
+    /**
+     * [0, 1)范围内的小数
+     */
+    public double doubleAt(long index) {
+        return (longAt(index) >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * UUID格式的key，直接拼到char[]里，不经过UUID和SecureRandom
+     */
+    public String keyAt(long index) {
+        long msb = longAt(index * 2);
+        long lsb = longAt(index * 2 + 1);
+        char[] chars = new char[36];
+        int pos = 0;
+        for (int i = 0; i < 32; i++) {
+            if (i == 8 || i == 12 || i == 16 || i == 20) {
+                chars[pos++] = '-';
+            }
+            long bits = i < 16 ? msb : lsb;
+            chars[pos++] = HEX[(int) (bits >>> (60 - (i % 16) * 4)) & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 占用下一个index生成一个key，用来代替UUID.randomUUID()
+     */
+    public String nextKey() {
+        return keyAt(reserve(1));
+    }
+
+    private long reserve(int count) {
+        return cursor.getAndAdd(count);
+    }
+
+    public int[] ints(int count, int bound) {
+        long base = reserve(count);
+        int[] result = new int[count];
+        Arrays.parallelSetAll(result, i -> intAt(base + i, bound));
+        return result;
+    }
+
+    public long[] longs(int count) {
+        long base = reserve(count);
+        long[] result = new long[count];
+        Arrays.parallelSetAll(result, i -> longAt(base + i));
+        return result;
+    }
+
+    public String[] keys(int count) {
+        long base = reserve(count);
+        String[] result = new String[count];
+        Arrays.parallelSetAll(result, i -> keyAt(base + i));
+        return result;
+    }
+
+    /**
+     * from开始的count个连续整数，并行装箱到预分配的数组，可以用Arrays.asList直接addAll
+     */
+    public static Integer[] sequence(int from, int count) {
+        Integer[] result = new Integer[count];
+        Arrays.parallelSetAll(result, i -> from + i);
+        return result;
+    }
+
+    /**
+     * 由同一个字符组成的指定长度字符串
+     */
+    public static String payload(int length, char c) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
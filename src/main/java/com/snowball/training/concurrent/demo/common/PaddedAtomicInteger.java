@@ -0,0 +1,66 @@
+package com.snowball.training.concurrent.demo.common;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+abstract class PaddedIntLhs {
+    // 填满开启压缩类指针时对象头后面的4字节空隙，JDK 15+会把子类的int字段放进这个空隙，value前面就没有填充了
+    protected int p0;
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class PaddedIntValue extends PaddedIntLhs {
+    protected volatile int value;
+}
+
+abstract class PaddedIntRhs extends PaddedIntValue {
+    protected long p9, p10, p11, p12, p13, p14, p15;
+}
+
+/**
+ * 前后各填充56字节的AtomicInteger，用法和填充方式同PaddedAtomicLong
+ */
+public class PaddedAtomicInteger extends PaddedIntRhs {
+
+    private static final AtomicIntegerFieldUpdater<PaddedIntValue> VALUE =
+            AtomicIntegerFieldUpdater.newUpdater(PaddedIntValue.class, "value");
+
+    public PaddedAtomicInteger() {
+    }
+
+    public PaddedAtomicInteger(int initial) {
+        VALUE.lazySet(this, initial);
+    }
+
+    public int get() {
+        return value;
+    }
+
+    public void set(int newValue) {
+        value = newValue;
+    }
+
+    public void lazySet(int newValue) {
+        VALUE.lazySet(this, newValue);
+    }
+
+    public boolean compareAndSet(int expect, int update) {
+        return VALUE.compareAndSet(this, expect, update);
+    }
+
+    public int incrementAndGet() {
+        return VALUE.incrementAndGet(this);
+    }
+
+    public int addAndGet(int delta) {
+        return VALUE.addAndGet(this, delta);
+    }
+
+    public int getAndAdd(int delta) {
+        return VALUE.getAndAdd(this, delta);
+    }
+
+    @Override
+    public String toString() {
+        return Integer.toString(value);
+    }
+}
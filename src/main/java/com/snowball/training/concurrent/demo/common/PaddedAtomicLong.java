@@ -0,0 +1,71 @@
+package com.snowball.training.concurrent.demo.common;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+abstract class PaddedLongLhs {
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class PaddedLongValue extends PaddedLongLhs {
+    protected volatile long value;
+}
+
+abstract class PaddedLongRhs extends PaddedLongValue {
+    protected long p9, p10, p11, p12, p13, p14, p15;
+}
+
+/**
+ * 前后各填充56字节的AtomicLong，value独占一个缓存行，多个线程各自频繁写的计数器不会互相让对方的缓存行失效(伪共享)
+ * 填充放在父类里是因为JVM会重排同一个类里的字段，JDK 14及以前也不会把子类字段排到父类字段之前；
+ * JDK 15起字段布局会用子类字段填补父类留下的空隙，所以父类不能留空隙：long放不进对象头后面的4字节空隙，
+ * PaddedAtomicInteger的int值可以，那里多了一个int p0；布局由benchmark模块的FalseSharingLayout用JOL检查
+ * 不依赖@Contended，JDK 8上不需要-XX:-RestrictContended
+ */
+public class PaddedAtomicLong extends PaddedLongRhs {
+
+    private static final AtomicLongFieldUpdater<PaddedLongValue> VALUE =
+            AtomicLongFieldUpdater.newUpdater(PaddedLongValue.class, "value");
+
+    public PaddedAtomicLong() {
+    }
+
+    public PaddedAtomicLong(long initial) {
+        VALUE.lazySet(this, initial);
+    }
+
+    public long get() {
+        return value;
+    }
+
+    public void set(long newValue) {
+        value = newValue;
+    }
+
+    /**
+     * 只保证其他线程最终可见，不插入StoreLoad屏障，单一写者发布进度时用
+     */
+    public void lazySet(long newValue) {
+        VALUE.lazySet(this, newValue);
+    }
+
+    public boolean compareAndSet(long expect, long update) {
+        return VALUE.compareAndSet(this, expect, update);
+    }
+
+    public long incrementAndGet() {
+        return VALUE.incrementAndGet(this);
+    }
+
+    public long addAndGet(long delta) {
+        return VALUE.addAndGet(this, delta);
+    }
+
+    public long getAndAdd(long delta) {
+        return VALUE.getAndAdd(this, delta);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(value);
+    }
+}
@@ -0,0 +1,161 @@
+package com.snowball.training.concurrent.demo.common;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 请求级上下文
+ * 所有上下文变量共用一个ThreadLocal，每个Key在创建时分配固定下标，值存放在数组里，读写不需要在ThreadLocalMap中哈希探测
+ * 由RequestContextBindingFilter在请求开始时绑定、结束时清除；提交到线程池或CompletableFuture的任务用wrap捕获并在执行时恢复
+ */
+public final class RequestContext {
+
+    private static final AtomicInteger KEY_INDEX = new AtomicInteger();
+    private static final ThreadLocal<RequestContext> CURRENT = new ThreadLocal<>();
+
+    private Object[] slots;
+
+    private RequestContext(Object[] slots) {
+        this.slots = slots;
+    }
+
+    /**
+     * 上下文变量的Key，应该作为static final常量创建，下标分配后不会回收
+     */
+    public static final class Key<T> {
+        private final int index;
+        private final String name;
+
+        private Key(int index, String name) {
+            this.index = index;
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return "RequestContext.Key(" + name + "#" + index + ")";
+        }
+    }
+
+    /**
+     * 恢复之前上下文的句柄，配合try-with-resources使用
+     */
+    public static final class Scope implements AutoCloseable {
+        private final RequestContext previous;
+
+        private Scope(RequestContext previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public static <T> Key<T> newKey(String name) {
+        return new Key<>(KEY_INDEX.getAndIncrement(), name);
+    }
+
+    /**
+     * 在当前线程上开启一个空的上下文
+     */
+    public static Scope open() {
+        return attach(new RequestContext(new Object[KEY_INDEX.get()]));
+    }
+
+    /**
+     * 把指定上下文绑定到当前线程，关闭Scope时恢复原来的上下文
+     */
+    public static Scope attach(RequestContext context) {
+        RequestContext previous = CURRENT.get();
+        if (context == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+        return new Scope(previous);
+    }
+
+    /**
+     * 当前线程的上下文，不在请求中时返回null
+     */
+    public static RequestContext current() {
+        return CURRENT.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T get(Key<T> key) {
+        RequestContext context = CURRENT.get();
+        if (context == null) {
+            return null;
+        }
+        Object[] slots = context.slots;
+        return key.index < slots.length ? (T) slots[key.index] : null;
+    }
+
+    public static <T> void set(Key<T> key, T value) {
+        RequestContext context = CURRENT.get();
+        if (context == null) {
+            throw new IllegalStateException("no request context bound to thread " + Thread.currentThread().getName());
+        }
+        if (key.index >= context.slots.length) {
+            // 上下文创建之后才定义的Key
+            context.slots = Arrays.copyOf(context.slots, KEY_INDEX.get());
+        }
+        context.slots[key.index] = value;
+    }
+
+    /**
+     * 当前上下文的快照，异步任务拿到的是提交时的值，不会和请求线程互相覆盖
+     */
+    public static RequestContext capture() {
+        RequestContext context = CURRENT.get();
+        return context == null ? null : new RequestContext(context.slots.clone());
+    }
+
+    public static Runnable wrap(Runnable task) {
+        RequestContext captured = capture();
+        return () -> {
+            try (Scope ignored = attach(captured)) {
+                task.run();
+            }
+        };
+    }
+
+    public static <V> Callable<V> wrapCallable(Callable<V> task) {
+        RequestContext captured = capture();
+        return () -> {
+            try (Scope ignored = attach(captured)) {
+                return task.call();
+            }
+        };
+    }
+
+    public static <V> Supplier<V> wrapSupplier(Supplier<V> task) {
+        RequestContext captured = capture();
+        return () -> {
+            try (Scope ignored = attach(captured)) {
+                return task.get();
+            }
+        };
+    }
+
+    /**
+     * 提交的每个任务都会携带提交线程的上下文，可以传给CompletableFuture.supplyAsync等方法
+     */
+    public static Executor wrapExecutor(Executor executor) {
+        return task -> executor.execute(wrap(task));
+    }
+}
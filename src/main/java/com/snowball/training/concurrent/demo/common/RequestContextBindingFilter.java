@@ -0,0 +1,28 @@
+package com.snowball.training.concurrent.demo.common;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 每个请求开始时在Tomcat工作线程上绑定一个新的RequestContext，请求结束后无论成功与否都会清除，不依赖业务代码手动remove
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RequestContextBindingFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        try (RequestContext.Scope ignored = RequestContext.open()) {
+            filterChain.doFilter(request, response);
+        }
+    }
+}
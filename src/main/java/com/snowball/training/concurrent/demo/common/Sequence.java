@@ -0,0 +1,16 @@
+package com.snowball.training.concurrent.demo.common;
+
+/**
+ * 环形缓冲区的序号，初始为-1表示还没有任何元素
+ * 继承PaddedAtomicLong，生产者和消费者频繁写的序号各占一个缓存行
+ */
+public class Sequence extends PaddedAtomicLong {
+
+    public Sequence() {
+        this(-1);
+    }
+
+    public Sequence(long initial) {
+        super(initial);
+    }
+}
@@ -0,0 +1,115 @@
+package com.snowball.training.concurrent.demo.question1;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 有容量上限的ConcurrentHashMap
+ * 插入前先用CAS在计数器上预占一个位置，预占成功才真正写入，多个线程可以并行填充且总数不会超过capacity
+ * 不需要像ConcurrentHashMapMisuseController.right()那样锁住整个Map，也不需要每次调用size()汇总计数
+ */
+public class BoundedConcurrentMap<K, V> {
+
+    private final ConcurrentHashMap<K, V> map;
+    private final int capacity;
+    // 已预占的位置数，包含正在写入的元素
+    private final AtomicInteger reserved = new AtomicInteger();
+    // 因为容量已满被拒绝的插入次数
+    private final LongAdder rejected = new LongAdder();
+
+    public BoundedConcurrentMap(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.map = new ConcurrentHashMap<>(capacity);
+    }
+
+    /**
+     * key不存在且还有剩余容量时写入
+     * @return 是否写入成功，key已存在或者容量已满时返回false
+     */
+    public boolean putIfAbsent(K key, V value) {
+        if (!tryReserve()) {
+            rejected.increment();
+            return false;
+        }
+        if (map.putIfAbsent(key, value) != null) {
+            // key已存在，归还预占的位置，不计入拒绝次数
+            reserved.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 逐个写入，容量满了之后剩余的元素都会被拒绝
+     * @return 实际写入的元素数
+     */
+    public int putAll(Map<? extends K, ? extends V> m) {
+        int inserted = 0;
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            if (putIfAbsent(entry.getKey(), entry.getValue())) {
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+
+    public V remove(K key) {
+        V removed = map.remove(key);
+        if (removed != null) {
+            reserved.decrementAndGet();
+        }
+        return removed;
+    }
+
+    public V get(K key) {
+        return map.get(key);
+    }
+
+    private boolean tryReserve() {
+        while (true) {
+            int current = reserved.get();
+            if (current >= capacity) {
+                return false;
+            }
+            if (reserved.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 已预占的位置数，O(1)，不会遍历ConcurrentHashMap的计数单元
+     */
+    public int size() {
+        return reserved.get();
+    }
+
+    public int remainingCapacity() {
+        return Math.max(0, capacity - reserved.get());
+    }
+
+    public boolean isFull() {
+        return reserved.get() >= capacity;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * 只读视图，修改必须经过putIfAbsent/remove，避免绕过容量检查
+     */
+    public Map<K, V> asMap() {
+        return Collections.unmodifiableMap(map);
+    }
+}
@@ -1,18 +1,15 @@
 package com.snowball.training.concurrent.demo.question1;
 
+import com.snowball.training.concurrent.demo.common.DataGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
-import java.util.stream.LongStream;
 
 @RestController
 @RequestMapping("q1")
@@ -26,20 +23,26 @@ public class ConcurrentHashMapMisuseController {
 
     /**
      * 获得一个指定元素数量模拟数据的ConcurrentHashMap
+     * @param generator 同一个请求内共用，保证各线程拿到的key互不重复
      * @param count
      * @return
      */
-    private ConcurrentHashMap<String, Long> getData(int count) {
-        return LongStream.rangeClosed(1, count)
-                .boxed()
-                .collect(Collectors.toConcurrentMap(i -> UUID.randomUUID().toString(), Function.identity(),
-                        (o1, o2) -> o1, ConcurrentHashMap::new));
+    private ConcurrentHashMap<String, Long> getData(DataGenerator generator, int count) {
+        // 已经超填时gap为负数
+        int size = Math.max(0, count);
+        String[] keys = generator.keys(size);
+        ConcurrentHashMap<String, Long> data = new ConcurrentHashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            data.put(keys[i], i + 1L);
+        }
+        return data;
     }
 
     @GetMapping("wrong")
     public String wrong() throws InterruptedException {
+        DataGenerator generator = new DataGenerator();
         // 初始化900个元素
-        ConcurrentHashMap<String, Long> concurrentHashMap = getData(ITEM_COUNT - 100);
+        ConcurrentHashMap<String, Long> concurrentHashMap = getData(generator, ITEM_COUNT - 100);
         log.info("init size:{}", concurrentHashMap.size());
 
         // 创建一个线程池，并使用线程池并发处理逻辑
@@ -49,7 +52,7 @@ public class ConcurrentHashMapMisuseController {
             int gap = ITEM_COUNT - concurrentHashMap.size();
             log.info("gap size:{}", gap);
             //填充剩余元素
-            concurrentHashMap.putAll(getData(gap));
+            concurrentHashMap.putAll(getData(generator, gap));
         }));
         // 等待全部并行任务完成后关闭线程池
         forkJoinPool.shutdown();
@@ -61,7 +64,8 @@ public class ConcurrentHashMapMisuseController {
 
     @GetMapping("right")
     public String right() throws InterruptedException {
-        ConcurrentHashMap<String, Long> concurrentHashMap = getData(ITEM_COUNT - 100);
+        DataGenerator generator = new DataGenerator();
+        ConcurrentHashMap<String, Long> concurrentHashMap = getData(generator, ITEM_COUNT - 100);
         log.info("init size:{}", concurrentHashMap.size());
 
         ForkJoinPool forkJoinPool = new ForkJoinPool(THREAD_COUNT);
@@ -69,7 +73,7 @@ public class ConcurrentHashMapMisuseController {
             synchronized (concurrentHashMap) {
                 int gap = ITEM_COUNT - concurrentHashMap.size();
                 log.info("gap size:{}", gap);
-                concurrentHashMap.putAll(getData(gap));
+                concurrentHashMap.putAll(getData(generator, gap));
             }
         }));
         forkJoinPool.shutdown();
@@ -78,4 +82,28 @@ public class ConcurrentHashMapMisuseController {
         log.info("finish size:{}", concurrentHashMap.size());
         return "OK";
     }
+
+    @GetMapping("fast")
+    public String fast() throws InterruptedException {
+        // 容量上限就是ITEM_COUNT，由Map自己保证不会超填
+        DataGenerator generator = new DataGenerator();
+        BoundedConcurrentMap<String, Long> boundedMap = new BoundedConcurrentMap<>(ITEM_COUNT);
+        boundedMap.putAll(getData(generator, ITEM_COUNT - 100));
+        log.info("init size:{}", boundedMap.size());
+
+        long begin = System.currentTimeMillis();
+        ForkJoinPool forkJoinPool = new ForkJoinPool(THREAD_COUNT);
+        forkJoinPool.execute(() -> IntStream.rangeClosed(1, 10).parallel().forEach(i -> {
+            // 不加锁，各线程并行填充，超出容量的部分直接被拒绝
+            int gap = boundedMap.remainingCapacity();
+            log.info("gap size:{}", gap);
+            boundedMap.putAll(getData(generator, gap));
+        }));
+        forkJoinPool.shutdown();
+        forkJoinPool.awaitTermination(1, TimeUnit.HOURS);
+
+        log.info("finish size:{} rejected:{} took:{}ms", boundedMap.size(), boundedMap.rejectedCount(),
+                System.currentTimeMillis() - begin);
+        return "OK";
+    }
 }
@@ -5,8 +5,12 @@ import org.springframework.util.Assert;
 import org.springframework.util.StopWatch;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
@@ -44,6 +48,12 @@ public class ConcurrentHashMapPerformanceController {
         Assert.isTrue(gooduse.size() == ITEM_COUNT, "gooduse size error");
         Assert.isTrue(gooduse.entrySet().stream().mapToLong(item -> item.getValue()).reduce(0, Long::sum) == LOOP_COUNT
                 , "gooduse count error");
+
+        stopWatch.start("primitiveuse");
+        ConcurrentLongCounterMap primitiveuse = primitiveUse();
+        stopWatch.stop();
+        Assert.isTrue(primitiveuse.size() == ITEM_COUNT, "primitiveuse size error");
+        Assert.isTrue(primitiveuse.sum() == LOOP_COUNT, "primitiveuse count error");
         log.info(stopWatch.prettyPrint());
         return "OK";
     }
@@ -69,10 +79,14 @@ public class ConcurrentHashMapPerformanceController {
     }
 
     private Map<String, Long> goodUse() throws InterruptedException {
-        ConcurrentHashMap<String, LongAdder> freqs = new ConcurrentHashMap<>(ITEM_COUNT);
-        ForkJoinPool forkJoinPool = new ForkJoinPool(THREAD_COUNT);
-        forkJoinPool.execute(() -> IntStream.rangeClosed(1, LOOP_COUNT).parallel().forEach(i -> {
-                    String key = "item" + ThreadLocalRandom.current().nextInt(ITEM_COUNT);
+        return goodUse(THREAD_COUNT, ITEM_COUNT, LOOP_COUNT);
+    }
+
+    private Map<String, Long> goodUse(int threadCount, int itemCount, int loopCount) throws InterruptedException {
+        ConcurrentHashMap<String, LongAdder> freqs = new ConcurrentHashMap<>(itemCount);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(threadCount);
+        forkJoinPool.execute(() -> IntStream.rangeClosed(1, loopCount).parallel().forEach(i -> {
+                    String key = "item" + ThreadLocalRandom.current().nextInt(itemCount);
                     freqs.computeIfAbsent(key, k -> new LongAdder()).increment();
                 }
         ));
@@ -80,4 +94,79 @@ public class ConcurrentHashMapPerformanceController {
         forkJoinPool.awaitTermination(1, TimeUnit.HOURS);
         return freqs.entrySet().stream().collect(Collectors.toMap(e -> e.getKey(),e -> e.getValue().longValue()));
     }
+
+    /**
+     * 直接以int作为key计数，计数过程不创建String和LongAdder，结果也不再装箱成Map
+     */
+    private ConcurrentLongCounterMap primitiveUse() throws InterruptedException {
+        return primitiveUse(THREAD_COUNT, ITEM_COUNT, LOOP_COUNT);
+    }
+
+    private ConcurrentLongCounterMap primitiveUse(int threadCount, int itemCount, int loopCount) throws InterruptedException {
+        ConcurrentLongCounterMap freqs = new ConcurrentLongCounterMap(itemCount);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(threadCount);
+        forkJoinPool.execute(() -> IntStream.rangeClosed(1, loopCount).parallel().forEach(i ->
+                freqs.increment(ThreadLocalRandom.current().nextInt(itemCount))
+        ));
+        forkJoinPool.shutdown();
+        forkJoinPool.awaitTermination(1, TimeUnit.HOURS);
+        return freqs;
+    }
+
+    /**
+     * 每个叶子任务计数到自己私有的非线程安全Map，不和其他线程共享任何缓存行，最后按fork/join的树形结构两两合并
+     */
+    private LongCounterHashMap localMergeUse(int threadCount, int itemCount, int loopCount) {
+        ForkJoinPool forkJoinPool = new ForkJoinPool(threadCount);
+        try {
+            // 叶子数量取线程数的4倍，让工作窃取可以平衡负载
+            int threshold = Math.max(1, loopCount / (threadCount * 4));
+            return forkJoinPool.invoke(new LocalCountTask(0, loopCount, threshold, itemCount));
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    /**
+     * 对比共享LongAdder、共享原始类型Map和线程私有计数再合并三种方式在不同线程数、key数量下的吞吐
+     * 参数用逗号分隔，会组合出所有情况，key数量很大时合并会成为瓶颈
+     */
+    @GetMapping("reduce")
+    public List<Map<String, Object>> reduce(@RequestParam(value = "threads", defaultValue = "2,10") String threads,
+                                            @RequestParam(value = "items", defaultValue = "1000,1000000") String items,
+                                            @RequestParam(value = "loops", defaultValue = "10000000") int loops) throws InterruptedException {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (String threadCount : threads.split(",")) {
+            for (String itemCount : items.split(",")) {
+                int t = Integer.parseInt(threadCount.trim());
+                int n = Integer.parseInt(itemCount.trim());
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("threadCount", t);
+                row.put("itemCount", n);
+
+                long begin = System.nanoTime();
+                Map<String, Long> gooduse = goodUse(t, n, loops);
+                row.put("gooduse", opsPerSecond(loops, begin));
+                Assert.isTrue(gooduse.values().stream().mapToLong(Long::longValue).sum() == loops, "gooduse count error");
+
+                begin = System.nanoTime();
+                ConcurrentLongCounterMap primitiveuse = primitiveUse(t, n, loops);
+                row.put("primitiveuse", opsPerSecond(loops, begin));
+                Assert.isTrue(primitiveuse.sum() == loops, "primitiveuse count error");
+
+                begin = System.nanoTime();
+                LongCounterHashMap localmergeuse = localMergeUse(t, n, loops);
+                row.put("localmergeuse", opsPerSecond(loops, begin));
+                Assert.isTrue(localmergeuse.sum() == loops, "localmergeuse count error");
+
+                log.info("reduce:{}", row);
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private static long opsPerSecond(int loops, long beginNanos) {
+        return loops * 1_000_000_000L / Math.max(1, System.nanoTime() - beginNanos);
+    }
 }
@@ -0,0 +1,183 @@
+package com.snowball.training.concurrent.demo.question1;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 以long为key、long为计数的并发计数Map
+ * 分段的开放寻址表，key和计数相邻存放在同一个AtomicLongArray中，计数过程不装箱、不分配对象
+ * 容量在构造时确定，不支持扩容，某个分段写满时抛出IllegalStateException
+ */
+public class ConcurrentLongCounterMap {
+
+    /**
+     * 遍历(key, count)时使用的回调，避免装箱
+     */
+    @FunctionalInterface
+    public interface KeyCountConsumer {
+        void accept(long key, long count);
+    }
+
+    // 空槽标记，因此Long.MIN_VALUE不能作为key
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public ConcurrentLongCounterMap(int expectedKeys) {
+        this(expectedKeys, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    public ConcurrentLongCounterMap(int expectedKeys, int stripeCount) {
+        if (expectedKeys <= 0 || stripeCount <= 0) {
+            throw new IllegalArgumentException("expectedKeys and stripeCount must be positive");
+        }
+        int stripeSize = tableSizeFor(stripeCount);
+        // 每个分段多留一倍余量，防止key在分段间分布不均时提前写满
+        int capacity = tableSizeFor((int) Math.ceil(expectedKeys * 2.0 / stripeSize / LOAD_FACTOR));
+        this.stripes = new Stripe[stripeSize];
+        for (int i = 0; i < stripeSize; i++) {
+            stripes[i] = new Stripe(capacity);
+        }
+        this.stripeMask = stripeSize - 1;
+    }
+
+    public void increment(long key) {
+        add(key, 1L);
+    }
+
+    public void add(long key, long delta) {
+        checkKey(key);
+        long hash = hash(key);
+        // 低32位选择分段，高32位作为分段内的槽位
+        stripes[(int) hash & stripeMask].add(key, (int) (hash >>> 32), delta);
+    }
+
+    public long get(long key) {
+        checkKey(key);
+        long hash = hash(key);
+        return stripes[(int) hash & stripeMask].get(key, (int) (hash >>> 32));
+    }
+
+    /**
+     * key的数量，只累加各分段的插入计数，不遍历表
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size.get();
+        }
+        return size;
+    }
+
+    /**
+     * 所有key的计数之和
+     */
+    public long sum() {
+        long sum = 0;
+        for (Stripe stripe : stripes) {
+            AtomicLongArray cells = stripe.cells;
+            for (int i = 0; i < cells.length(); i += 2) {
+                if (cells.get(i) != EMPTY) {
+                    sum += cells.get(i + 1);
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 流式遍历当前的(key, count)，并发写入时看到的是弱一致的快照
+     */
+    public void forEach(KeyCountConsumer consumer) {
+        for (Stripe stripe : stripes) {
+            AtomicLongArray cells = stripe.cells;
+            for (int i = 0; i < cells.length(); i += 2) {
+                long key = cells.get(i);
+                if (key != EMPTY) {
+                    consumer.accept(key, cells.get(i + 1));
+                }
+            }
+        }
+    }
+
+    private static void checkKey(long key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Long.MIN_VALUE is reserved");
+        }
+    }
+
+    private static long hash(long key) {
+        // murmur3 fmix64
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static int tableSizeFor(int n) {
+        int size = 1;
+        while (size < n) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static final class Stripe {
+        // 偶数位存key，奇数位存计数，key和计数落在同一缓存行
+        final AtomicLongArray cells;
+        final int mask;
+        final AtomicInteger size = new AtomicInteger();
+
+        Stripe(int capacity) {
+            cells = new AtomicLongArray(capacity * 2);
+            for (int i = 0; i < cells.length(); i += 2) {
+                cells.set(i, EMPTY);
+            }
+            mask = capacity - 1;
+        }
+
+        void add(long key, int hash, long delta) {
+            int index = hash & mask;
+            for (int probes = 0; probes <= mask; ) {
+                int slot = index << 1;
+                long current = cells.get(slot);
+                if (current == key) {
+                    cells.getAndAdd(slot + 1, delta);
+                    return;
+                }
+                if (current == EMPTY) {
+                    if (cells.compareAndSet(slot, EMPTY, key)) {
+                        size.incrementAndGet();
+                        cells.getAndAdd(slot + 1, delta);
+                        return;
+                    }
+                    // 被其他线程抢先占用，重新检查这个槽位
+                    continue;
+                }
+                index = (index + 1) & mask;
+                probes++;
+            }
+            throw new IllegalStateException("stripe is full, capacity:" + (mask + 1));
+        }
+
+        long get(long key, int hash) {
+            int index = hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                int slot = index << 1;
+                long current = cells.get(slot);
+                if (current == key) {
+                    return cells.get(slot + 1);
+                }
+                if (current == EMPTY) {
+                    return 0L;
+                }
+                index = (index + 1) & mask;
+            }
+            return 0L;
+        }
+    }
+}
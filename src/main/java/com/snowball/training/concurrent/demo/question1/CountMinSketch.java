@@ -0,0 +1,114 @@
+package com.snowball.training.concurrent.demo.question1;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 并发Count-Min Sketch，内存占用固定为depth * width个long
+ * 估计值只会偏大：以1-delta的概率，estimate <= 真实值 + epsilon * N，其中epsilon = e / width，delta = e^-depth
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final int mask;
+    private final AtomicLongArray counters;
+    private final LongAdder total = new LongAdder();
+
+    public CountMinSketch(int depth, int width) {
+        if (depth <= 0 || width <= 0 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("depth must be positive and width must be a power of two");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.mask = width - 1;
+        this.counters = new AtomicLongArray(depth * width);
+    }
+
+    /**
+     * 按误差要求创建，width向上取整到2的幂
+     */
+    public static CountMinSketch withError(double epsilon, double delta) {
+        int width = 1;
+        while (width < Math.ceil(Math.E / epsilon)) {
+            width <<= 1;
+        }
+        int depth = (int) Math.ceil(Math.log(1 / delta));
+        return new CountMinSketch(depth, width);
+    }
+
+    public void add(CharSequence key, long count) {
+        add(hash(key), count);
+    }
+
+    public void add(long hash, long count) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < depth; i++) {
+            counters.getAndAdd(i * width + ((h1 + i * h2) & mask), count);
+        }
+        total.add(count);
+    }
+
+    public long estimate(CharSequence key) {
+        return estimate(hash(key));
+    }
+
+    public long estimate(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters.get(i * width + ((h1 + i * h2) & mask)));
+        }
+        return min;
+    }
+
+    /**
+     * 64位FNV-1a再做一次murmur3 fmix64，逐字符计算，不需要把key转成byte[]
+     */
+    public static long hash(CharSequence key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public long totalCount() {
+        return total.sum();
+    }
+
+    public double epsilon() {
+        return Math.E / width;
+    }
+
+    public double delta() {
+        return Math.exp(-depth);
+    }
+
+    /**
+     * 当前总数下的加性误差上限epsilon * N
+     */
+    public long errorBound() {
+        return (long) Math.ceil(epsilon() * totalCount());
+    }
+
+    public long estimatedBytes() {
+        return 16L + 8L * depth * width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+}
@@ -0,0 +1,104 @@
+package com.snowball.training.concurrent.demo.question1;
+
+import com.snowball.training.concurrent.demo.common.DataGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@RestController
+@RequestMapping("q1")
+@Slf4j
+public class HeavyHitterController {
+
+    // 线程数量
+    private static int THREAD_COUNT = 10;
+
+    /**
+     * 第i个元素对应的key，同一个种子和i总是得到同一个key，两种统计方式使用完全相同的数据流
+     * 对均匀分布做4次方变换，编号越小的key出现得越频繁
+     */
+    private static String key(DataGenerator generator, int i, int itemCount) {
+        double u = generator.doubleAt(i);
+        return "item" + (int) (itemCount * u * u * u * u);
+    }
+
+    @GetMapping("topk")
+    public Map<String, Object> topK(@RequestParam(value = "k", defaultValue = "10") int k,
+                                    @RequestParam(value = "itemCount", defaultValue = "1000000") int itemCount,
+                                    @RequestParam(value = "loopCount", defaultValue = "10000000") int loopCount,
+                                    @RequestParam(value = "seed", required = false) Long seed) throws InterruptedException {
+        // 每次请求按种子新建生成器，同样的参数和种子得到同样的数据流，结果可以复现
+        DataGenerator generator = new DataGenerator(seed == null ? DataGenerator.DEFAULT_SEED : seed);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("seed", seed == null ? DataGenerator.DEFAULT_SEED : seed);
+
+        // 精确统计：每个key一个LongAdder
+        ConcurrentHashMap<String, LongAdder> freqs = new ConcurrentHashMap<>();
+        long begin = System.nanoTime();
+        run(i -> freqs.computeIfAbsent(key(generator, i, itemCount), __ -> new LongAdder()).increment(), loopCount);
+        long exactNanos = System.nanoTime() - begin;
+        List<Map.Entry<String, Long>> exactTopK = freqs.entrySet().stream()
+                .map(e -> new AbstractMap.SimpleEntry<>(e.getKey(), e.getValue().sum()))
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(k)
+                .collect(Collectors.toList());
+        Map<String, Object> exact = new LinkedHashMap<>();
+        exact.put("took", TimeUnit.NANOSECONDS.toMillis(exactNanos));
+        exact.put("opsPerSecond", loopCount * 1_000_000_000L / Math.max(1, exactNanos));
+        exact.put("keys", freqs.size());
+        exact.put("estimatedBytes", estimateExactBytes(freqs));
+        exact.put("topK", exactTopK);
+        result.put("exact", exact);
+
+        // 近似统计：固定内存的Count-Min + Space-Saving
+        HeavyHitterSketch heavyHitters = new HeavyHitterSketch(k * 10, 0.0001, 0.001);
+        begin = System.nanoTime();
+        run(i -> heavyHitters.record(key(generator, i, itemCount)), loopCount);
+        heavyHitters.flush();
+        long sketchNanos = System.nanoTime() - begin;
+        List<HeavyHitterSketch.Entry> sketchTopK = heavyHitters.topK().stream().limit(k).collect(Collectors.toList());
+        Map<String, Object> sketch = new LinkedHashMap<>();
+        sketch.put("took", TimeUnit.NANOSECONDS.toMillis(sketchNanos));
+        sketch.put("opsPerSecond", loopCount * 1_000_000_000L / Math.max(1, sketchNanos));
+        sketch.put("estimatedBytes", heavyHitters.estimatedBytes());
+        sketch.put("epsilon", heavyHitters.epsilon());
+        sketch.put("delta", heavyHitters.delta());
+        sketch.put("sketchErrorBound", heavyHitters.sketchErrorBound());
+        sketch.put("topK", sketchTopK);
+        result.put("sketch", sketch);
+
+        Set<String> exactKeys = exactTopK.stream().map(Map.Entry::getKey).collect(Collectors.toSet());
+        result.put("recall", sketchTopK.stream().filter(e -> exactKeys.contains(e.getKey())).count() / (double) Math.max(1, exactKeys.size()));
+        log.info("topK result:{}", result);
+        return result;
+    }
+
+    private void run(IntConsumer action, int loopCount) throws InterruptedException {
+        ForkJoinPool forkJoinPool = new ForkJoinPool(THREAD_COUNT);
+        forkJoinPool.execute(() -> IntStream.rangeClosed(1, loopCount).parallel().forEach(action));
+        forkJoinPool.shutdown();
+        forkJoinPool.awaitTermination(1, TimeUnit.HOURS);
+    }
+
+    /**
+     * 按对象布局粗略估算：Node 32 + String 24 + char[] (16 + 2 * length) + LongAdder 32 + 桶数组引用
+     */
+    private long estimateExactBytes(ConcurrentHashMap<String, LongAdder> freqs) {
+        long bytes = 0;
+        for (String key : freqs.keySet()) {
+            bytes += 32 + 24 + 16 + 2L * key.length() + 32 + 8;
+        }
+        return bytes;
+    }
+}
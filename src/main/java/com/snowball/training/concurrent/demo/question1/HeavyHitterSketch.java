@@ -0,0 +1,298 @@
+package com.snowball.training.concurrent.demo.question1;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 固定内存的高频元素(top-K)统计：Count-Min Sketch估计任意key的频率，Space-Saving维护K个候选高频key
+ * 候选集合满了之后，新key用Count-Min估计值决定是否替换最小的候选，避免长尾key反复替换导致计数虚高
+ * 候选按计数组成最小堆，找最小候选是O(1)，累加和替换后的调整是O(log K)
+ * 工作线程先写入自己的缓冲区，缓冲区的key数量或者计数达到阈值后再批量合并到共享结构，共享结构的锁只在合并时获取
+ * 写缓冲区不加锁：合并时先把缓冲区换成空的备用缓冲区，等属主线程写完手上这一次后再合并换下来的缓冲区
+ */
+public class HeavyHitterSketch {
+
+    // 每个线程缓冲区的槽位数，必须是2的幂
+    private static final int BUFFER_SIZE = 256;
+    // 缓冲区里不同key的数量达到3/4时合并
+    private static final int BUFFER_DISTINCT_LIMIT = BUFFER_SIZE * 3 / 4;
+    // 缓冲区累计计数达到该值时合并，避免少数热点key长时间停留在缓冲区里
+    private static final int BUFFER_COUNT_LIMIT = 4096;
+
+    private final CountMinSketch sketch;
+    private final int k;
+    // Space-Saving的候选集合和按count排列的最小堆，由this保护
+    private final Map<String, Counter> monitored;
+    private final Counter[] heap;
+    private final Queue<Recorder> recorders = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Recorder> localRecorder = ThreadLocal.withInitial(this::newRecorder);
+
+    public HeavyHitterSketch(int k, double epsilon, double delta) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        this.k = k;
+        this.sketch = CountMinSketch.withError(epsilon, delta);
+        this.monitored = new HashMap<>(k * 2);
+        this.heap = new Counter[k];
+    }
+
+    public void record(String key) {
+        localRecorder.get().record(key);
+    }
+
+    /**
+     * 把所有线程缓冲区中尚未合并的计数合并到共享结构
+     */
+    public void flush() {
+        for (Recorder recorder : recorders) {
+            recorder.flush();
+        }
+    }
+
+    /**
+     * 按Space-Saving计数从大到小返回候选的高频key，调用前会先合并所有缓冲区
+     */
+    public List<Entry> topK() {
+        flush();
+        List<Counter> counters;
+        synchronized (this) {
+            counters = new ArrayList<>(monitored.size());
+            for (Counter counter : monitored.values()) {
+                counters.add(new Counter(counter.key, counter.count, counter.error));
+            }
+        }
+        counters.sort((o1, o2) -> Long.compare(o2.count, o1.count));
+        List<Entry> result = new ArrayList<>(counters.size());
+        for (Counter counter : counters) {
+            result.add(new Entry(counter.key, counter.count, counter.error, sketch.estimate(counter.key)));
+        }
+        return result;
+    }
+
+    private Recorder newRecorder() {
+        Recorder recorder = new Recorder();
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    /**
+     * Space-Saving：已监控的key直接累加；未满时加入；已满时用Count-Min估计值和当前最小计数比较，
+     * 估计值更大才替换最小的key，估计值本身的误差记为该key的误差
+     * 调用前这一批计数已经写入sketch，所以估计值包含了本次的count
+     */
+    private void offer(String key, long hash, long count) {
+        Counter counter = monitored.get(key);
+        if (counter != null) {
+            counter.count += count;
+            siftDown(counter.index);
+            return;
+        }
+        int size = monitored.size();
+        if (size < k) {
+            long estimate = sketch.estimate(hash);
+            counter = new Counter(key, estimate, Math.min(estimate - count, sketch.errorBound()));
+            monitored.put(key, counter);
+            counter.index = size;
+            heap[size] = counter;
+            siftUp(size);
+            return;
+        }
+        Counter min = heap[0];
+        long estimate = sketch.estimate(hash);
+        if (estimate <= min.count) {
+            return;
+        }
+        monitored.remove(min.key);
+        min.key = key;
+        min.count = estimate;
+        min.error = Math.min(estimate - count, sketch.errorBound());
+        monitored.put(key, min);
+        siftDown(0);
+    }
+
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            move(heap[parent], index);
+            index = parent;
+        }
+        move(counter, index);
+    }
+
+    /**
+     * 计数只增不减，累加或替换后只需要向下调整
+     */
+    private void siftDown(int index) {
+        int size = monitored.size();
+        Counter counter = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            move(heap[child], index);
+            index = child;
+        }
+        move(counter, index);
+    }
+
+    private void move(Counter counter, int index) {
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    public long totalCount() {
+        return sketch.totalCount();
+    }
+
+    public double epsilon() {
+        return sketch.epsilon();
+    }
+
+    public double delta() {
+        return sketch.delta();
+    }
+
+    /**
+     * Count-Min估计值的加性误差上限epsilon * N
+     */
+    public long sketchErrorBound() {
+        return sketch.errorBound();
+    }
+
+    /**
+     * 估算的内存占用：sketch计数数组 + K个候选(按每个约128字节) + 各线程的两个缓冲区
+     */
+    public long estimatedBytes() {
+        return sketch.estimatedBytes() + 128L * k + (long) recorders.size() * 2 * BUFFER_SIZE * 24;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Entry {
+        private String key;
+        // 候选集合中的计数，真实值(以1-delta的概率)在[count - error, count]之间
+        private long count;
+        private long error;
+        // Count-Min估计值
+        private long estimate;
+    }
+
+    private static class Counter {
+        String key;
+        long count;
+        long error;
+        // 在heap中的下标
+        int index;
+
+        Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    /**
+     * 小型开放寻址缓冲区，只由属主线程写入
+     */
+    private static final class Buffer {
+        final String[] keys = new String[BUFFER_SIZE];
+        final long[] hashes = new long[BUFFER_SIZE];
+        final long[] counts = new long[BUFFER_SIZE];
+        int distinct;
+        long pending;
+
+        /**
+         * @return 达到合并阈值时返回true
+         */
+        boolean add(String key) {
+            long hash = CountMinSketch.hash(key);
+            int index = (int) hash & (BUFFER_SIZE - 1);
+            while (keys[index] != null) {
+                if (hashes[index] == hash && keys[index].equals(key)) {
+                    counts[index]++;
+                    return ++pending >= BUFFER_COUNT_LIMIT;
+                }
+                index = (index + 1) & (BUFFER_SIZE - 1);
+            }
+            keys[index] = key;
+            hashes[index] = hash;
+            counts[index] = 1;
+            pending++;
+            return ++distinct >= BUFFER_DISTINCT_LIMIT || pending >= BUFFER_COUNT_LIMIT;
+        }
+
+        void clear() {
+            Arrays.fill(keys, null);
+            Arrays.fill(counts, 0);
+            distinct = 0;
+            pending = 0;
+        }
+    }
+
+    /**
+     * 每个线程一个，record只由属主线程调用，不加锁；flush可以由任意线程调用，flush之间用this互斥
+     * 属主线程写缓冲区前后各把writing加1(奇数表示正在写)，flush先换上备用缓冲区再读writing：
+     * 读到偶数说明之后的写一定会看到新缓冲区，读到奇数就等这一次写完，然后换下来的缓冲区只归flush线程所有
+     */
+    private final class Recorder {
+        private final AtomicLong writing = new AtomicLong();
+        private volatile Buffer buffer = new Buffer();
+        // 只在持有this时访问
+        private Buffer spare = new Buffer();
+
+        void record(String key) {
+            long seq = writing.get() + 1;
+            // 必须是volatile写，保证之后读buffer时能看到flush换上的新缓冲区
+            writing.set(seq);
+            boolean full = buffer.add(key);
+            writing.lazySet(seq + 1);
+            if (full) {
+                flush();
+            }
+        }
+
+        synchronized void flush() {
+            Buffer full = buffer;
+            buffer = spare;
+            long seq = writing.get();
+            if ((seq & 1) != 0) {
+                while (writing.get() == seq) {
+                    Thread.yield();
+                }
+            }
+            if (full.distinct > 0) {
+                // sketch和候选集合在同一把锁内更新，否则其他线程已写入sketch但尚未offer的计数会被重复累加
+                synchronized (HeavyHitterSketch.this) {
+                    for (int i = 0; i < BUFFER_SIZE; i++) {
+                        if (full.keys[i] != null) {
+                            sketch.add(full.hashes[i], full.counts[i]);
+                            offer(full.keys[i], full.hashes[i], full.counts[i]);
+                        }
+                    }
+                }
+                full.clear();
+            }
+            spare = full;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.snowball.training.concurrent.demo.question1;
+
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 线程私有计数再合并：叶子任务计数到自己的LongCounterHashMap，fork/join返回时两两合并，合并过程本身也是并行的
+ */
+public class LocalCountTask extends RecursiveTask<LongCounterHashMap> {
+
+    private final int from;
+    private final int to;
+    private final int threshold;
+    private final int itemCount;
+
+    public LocalCountTask(int from, int to, int threshold, int itemCount) {
+        this.from = from;
+        this.to = to;
+        this.threshold = threshold;
+        this.itemCount = itemCount;
+    }
+
+    @Override
+    protected LongCounterHashMap compute() {
+        if (to - from <= threshold) {
+            LongCounterHashMap freqs = new LongCounterHashMap(Math.min(itemCount, to - from));
+            for (int i = from; i < to; i++) {
+                freqs.increment(ThreadLocalRandom.current().nextInt(itemCount));
+            }
+            return freqs;
+        }
+        int middle = (from + to) >>> 1;
+        LocalCountTask left = new LocalCountTask(from, middle, threshold, itemCount);
+        left.fork();
+        LongCounterHashMap right = new LocalCountTask(middle, to, threshold, itemCount).compute();
+        LongCounterHashMap leftResult = left.join();
+        // 小的合并进大的，减少插入和扩容次数
+        if (leftResult.size() >= right.size()) {
+            leftResult.merge(right);
+            return leftResult;
+        }
+        right.merge(leftResult);
+        return right;
+    }
+}
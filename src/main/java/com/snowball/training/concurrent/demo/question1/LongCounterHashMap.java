@@ -0,0 +1,123 @@
+package com.snowball.training.concurrent.demo.question1;
+
+import java.util.Arrays;
+
+/**
+ * 非线程安全的long计数Map，开放寻址，负载超过一半时翻倍扩容
+ * 只给单个线程私有使用，多个线程的结果通过merge合并
+ */
+public class LongCounterHashMap {
+
+    // 空槽标记，因此Long.MIN_VALUE不能作为key
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private long[] counts;
+    private int mask;
+    private int size;
+
+    public LongCounterHashMap(int expectedKeys) {
+        int capacity = 16;
+        while (capacity < expectedKeys * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        counts = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    public void increment(long key) {
+        add(key, 1L);
+    }
+
+    public void add(long key, long delta) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Long.MIN_VALUE is reserved");
+        }
+        int index = index(key);
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key) {
+                counts[index] += delta;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        counts[index] = delta;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    public long get(long key) {
+        int index = index(key);
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key) {
+                return counts[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return 0L;
+    }
+
+    /**
+     * 把other的计数累加到当前Map
+     */
+    public void merge(LongCounterHashMap other) {
+        long[] otherKeys = other.keys;
+        long[] otherCounts = other.counts;
+        for (int i = 0; i < otherKeys.length; i++) {
+            if (otherKeys[i] != EMPTY) {
+                add(otherKeys[i], otherCounts[i]);
+            }
+        }
+    }
+
+    public void forEach(ConcurrentLongCounterMap.KeyCountConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                sum += counts[i];
+            }
+        }
+        return sum;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int index = index(oldKeys[i]);
+                while (keys[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                counts[index] = oldCounts[i];
+            }
+        }
+    }
+
+    private int index(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,77 @@
+package com.snowball.training.concurrent.demo.question1;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.StopWatch;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+@RestController
+@RequestMapping("q1/window")
+@Slf4j
+public class SlidingWindowController {
+
+    // 线程数量
+    private static int THREAD_COUNT = 10;
+    // 记录数
+    private static int ITEM_COUNT = 1000;
+    // 每个桶1秒，保留最近60秒
+    private static int BUCKET_COUNT = 60;
+    private static long BUCKET_MILLIS = 1000;
+
+    // 跨请求保留，用来查询最近N秒的计数
+    private ConcurrentHashMap<String, SlidingWindowCounter> hits = new ConcurrentHashMap<>(ITEM_COUNT);
+
+    /**
+     * 按goodUse的方式计数，同时记录到滑动窗口计数器和普通LongAdder，对比两者的耗时
+     */
+    @GetMapping("hit")
+    public Map<String, Long> hit(@RequestParam(value = "count", defaultValue = "10000000") int count) throws InterruptedException {
+        ConcurrentHashMap<String, LongAdder> freqs = new ConcurrentHashMap<>(ITEM_COUNT);
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start("longadder");
+        run(count, key -> freqs.computeIfAbsent(key, k -> new LongAdder()).increment());
+        stopWatch.stop();
+        stopWatch.start("slidingwindow");
+        run(count, key -> hits.computeIfAbsent(key, k -> new SlidingWindowCounter(BUCKET_COUNT, BUCKET_MILLIS)).increment());
+        stopWatch.stop();
+        log.info(stopWatch.prettyPrint());
+
+        Map<String, Long> result = new HashMap<>();
+        result.put("longadder", freqs.values().stream().mapToLong(LongAdder::sum).sum());
+        result.put("slidingwindow", hits.values().stream().mapToLong(SlidingWindowCounter::sum).sum());
+        return result;
+    }
+
+    /**
+     * 每个key最近seconds秒内的计数
+     */
+    @GetMapping
+    public Map<String, Long> window(@RequestParam(value = "seconds", defaultValue = "10") int seconds) {
+        int lastBuckets = (int) Math.ceil(seconds * 1000.0 / BUCKET_MILLIS);
+        Map<String, Long> result = new TreeMap<>();
+        hits.forEach((key, counter) -> result.put(key, counter.sum(lastBuckets)));
+        return result;
+    }
+
+    private void run(int count, Consumer<String> action) throws InterruptedException {
+        ForkJoinPool forkJoinPool = new ForkJoinPool(THREAD_COUNT);
+        forkJoinPool.execute(() -> IntStream.rangeClosed(1, count).parallel().forEach(i ->
+                action.accept("item" + ThreadLocalRandom.current().nextInt(ITEM_COUNT))
+        ));
+        forkJoinPool.shutdown();
+        forkJoinPool.awaitTermination(1, TimeUnit.HOURS);
+    }
+}
@@ -0,0 +1,105 @@
+package com.snowball.training.concurrent.demo.question1;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 按时间分桶的滑动窗口计数器，统计最近bucketCount * bucketMillis毫秒内的计数
+ * 每个桶是一个LongAdder，环形复用；桶过期时用CAS换成新桶，不需要全局锁，也没有后台线程负责轮转
+ * 槽位上已经是更新的桶时，说明这次计数所在的时间段已经滑出窗口，直接丢弃，不会挪到新的桶里虚增当前窗口
+ * 窗口求和只遍历bucketCount个桶
+ */
+public class SlidingWindowCounter {
+
+    private final int bucketCount;
+    private final long bucketMillis;
+    private final LongSupplier clock;
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    public SlidingWindowCounter(int bucketCount, long bucketMillis) {
+        this(bucketCount, bucketMillis, System::currentTimeMillis);
+    }
+
+    public SlidingWindowCounter(int bucketCount, long bucketMillis, LongSupplier clock) {
+        if (bucketCount <= 0 || bucketMillis <= 0) {
+            throw new IllegalArgumentException("bucketCount and bucketMillis must be positive");
+        }
+        this.bucketCount = bucketCount;
+        this.bucketMillis = bucketMillis;
+        this.clock = clock;
+        this.buckets = new AtomicReferenceArray<>(bucketCount);
+    }
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void add(long delta) {
+        add(clock.getAsLong(), delta);
+    }
+
+    /**
+     * 读时钟的开销比LongAdder累加本身还大，批量计数时调用方可以只读一次时钟，把时间戳传进来
+     */
+    public void add(long nowMillis, long delta) {
+        long epoch = nowMillis / bucketMillis;
+        int index = (int) (epoch % bucketCount);
+        Bucket bucket = buckets.get(index);
+        while (bucket == null || bucket.epoch < epoch) {
+            // 桶已经过期，只有CAS成功的线程创建的新桶会被使用
+            Bucket fresh = new Bucket(epoch);
+            if (buckets.compareAndSet(index, bucket, fresh)) {
+                bucket = fresh;
+            } else {
+                bucket = buckets.get(index);
+            }
+        }
+        if (bucket.epoch > epoch) {
+            // 本线程读时钟之后这个槽位已经轮转到至少bucketCount个桶之后，这次计数已经滑出窗口
+            return;
+        }
+        // 累加之后桶才被换掉也一样：只有更新的epoch才会替换它，说明这段时间已经滑出窗口，计数随旧桶丢弃是正确的
+        bucket.adder.add(delta);
+    }
+
+    /**
+     * 整个窗口内的计数
+     */
+    public long sum() {
+        return sum(bucketCount);
+    }
+
+    /**
+     * 最近lastBuckets个桶(含当前桶)内的计数
+     */
+    public long sum(int lastBuckets) {
+        long epoch = clock.getAsLong() / bucketMillis;
+        long oldest = epoch - Math.min(lastBuckets, bucketCount) + 1;
+        long sum = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && bucket.epoch >= oldest && bucket.epoch <= epoch) {
+                sum += bucket.adder.sum();
+            }
+        }
+        return sum;
+    }
+
+    public long windowMillis() {
+        return bucketCount * bucketMillis;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    private static final class Bucket {
+        final long epoch;
+        final LongAdder adder = new LongAdder();
+
+        Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
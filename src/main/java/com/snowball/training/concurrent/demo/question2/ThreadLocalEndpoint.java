@@ -0,0 +1,81 @@
+package com.snowball.training.concurrent.demo.question2;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * /actuator/threadlocals
+ * 抽查名称匹配threadPrefixes的线程(默认是Tomcat和线程池的工作线程)，给出每个线程的ThreadLocal条目数、失效条目数和估算占用，
+ * 以及ThreadLocalLeakFilter抽样到的请求结束后仍未清除的ThreadLocal
+ * 只有调用时才遍历线程，平时没有开销
+ */
+@Component
+@Endpoint(id = "threadlocals")
+public class ThreadLocalEndpoint {
+
+    @Value("${demo.threadlocal.thread-prefixes:http-nio-,pool-,ForkJoinPool}")
+    private String[] threadPrefixes;
+    @Value("${demo.threadlocal.max-threads:200}")
+    private int maxThreads;
+
+    private final ThreadLocalLeakFilter leakFilter;
+
+    public ThreadLocalEndpoint(ThreadLocalLeakFilter leakFilter) {
+        this.leakFilter = leakFilter;
+    }
+
+    @ReadOperation
+    public Map<String, Object> threadLocals() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("supported", ThreadLocalInspector.supported());
+        if (!ThreadLocalInspector.supported()) {
+            result.put("reason", ThreadLocalInspector.unsupportedReason());
+            return result;
+        }
+        List<ThreadLocalInspector.ThreadStats> threads = new ArrayList<>();
+        for (Thread thread : sampleThreads()) {
+            threads.add(ThreadLocalInspector.inspect(thread));
+        }
+        threads.sort(Comparator.comparingLong(ThreadLocalInspector.ThreadStats::getEstimatedBytes).reversed());
+        result.put("threadCount", threads.size());
+        result.put("totalEntries", threads.stream().mapToLong(ThreadLocalInspector.ThreadStats::getEntries).sum());
+        result.put("totalStale", threads.stream().mapToLong(ThreadLocalInspector.ThreadStats::getStale).sum());
+        result.put("totalEstimatedBytes", threads.stream().mapToLong(ThreadLocalInspector.ThreadStats::getEstimatedBytes).sum());
+        result.put("threads", threads);
+        result.put("sampleRate", leakFilter.getSampleRate());
+        result.put("sampledRequests", leakFilter.getSampledRequests());
+        result.put("leaks", leakFilter.getLeaks());
+        return result;
+    }
+
+    @WriteOperation
+    public void reset() {
+        leakFilter.reset();
+    }
+
+    private List<Thread> sampleThreads() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        // enumerate不会抓取线程栈，比Thread.getAllStackTraces轻得多
+        Thread[] all = new Thread[root.activeCount() * 2 + 16];
+        int count = root.enumerate(all, true);
+        List<Thread> result = new ArrayList<>();
+        for (int i = 0; i < count && result.size() < maxThreads; i++) {
+            String name = all[i].getName();
+            for (String prefix : threadPrefixes) {
+                if (name.startsWith(prefix)) {
+                    result.add(all[i]);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
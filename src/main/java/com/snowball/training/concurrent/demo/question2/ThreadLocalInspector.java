@@ -0,0 +1,157 @@
+package com.snowball.training.concurrent.demo.question2;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * 通过反射读取线程的ThreadLocalMap，统计条目数、失效条目数(ThreadLocal已被回收但value还在)和估算的占用
+ * 读取其他线程的ThreadLocalMap没有加锁，结果是采样性质的近似值
+ * JDK 9及以上需要--add-opens java.base/java.lang=ALL-UNNAMED，否则supported()返回false
+ */
+@Slf4j
+public class ThreadLocalInspector {
+
+    private static final Field THREAD_LOCALS;
+    private static final Field TABLE;
+    private static final Field VALUE;
+    private static final String UNSUPPORTED_REASON;
+
+    static {
+        Field threadLocals = null;
+        Field table = null;
+        Field value = null;
+        String reason = null;
+        try {
+            threadLocals = Thread.class.getDeclaredField("threadLocals");
+            threadLocals.setAccessible(true);
+            Class<?> mapClass = Class.forName("java.lang.ThreadLocal$ThreadLocalMap");
+            table = mapClass.getDeclaredField("table");
+            table.setAccessible(true);
+            Class<?> entryClass = Class.forName("java.lang.ThreadLocal$ThreadLocalMap$Entry");
+            value = entryClass.getDeclaredField("value");
+            value.setAccessible(true);
+        } catch (Exception | LinkageError e) {
+            reason = e.toString();
+            log.warn("ThreadLocal inspection unsupported: {}", reason);
+        }
+        THREAD_LOCALS = reason == null ? threadLocals : null;
+        TABLE = reason == null ? table : null;
+        VALUE = reason == null ? value : null;
+        UNSUPPORTED_REASON = reason;
+    }
+
+    public static boolean supported() {
+        return UNSUPPORTED_REASON == null;
+    }
+
+    public static String unsupportedReason() {
+        return UNSUPPORTED_REASON;
+    }
+
+    /**
+     * 线程上当前设置了值的ThreadLocal实例，失效条目不包含在内
+     */
+    public static Map<ThreadLocal<?>, Object> liveEntries(Thread thread) {
+        Map<ThreadLocal<?>, Object> result = new IdentityHashMap<>();
+        for (Object entry : table(thread)) {
+            if (entry != null) {
+                ThreadLocal<?> threadLocal = (ThreadLocal<?>) ((Reference<?>) entry).get();
+                if (threadLocal != null) {
+                    result.put(threadLocal, value(entry));
+                }
+            }
+        }
+        return result;
+    }
+
+    public static ThreadStats inspect(Thread thread) {
+        ThreadStats stats = new ThreadStats();
+        stats.setThreadName(thread.getName());
+        Object[] table = table(thread);
+        stats.setTableLength(table.length);
+        for (Object entry : table) {
+            if (entry == null) {
+                continue;
+            }
+            stats.entries++;
+            Object value = value(entry);
+            if (((Reference<?>) entry).get() == null) {
+                stats.stale++;
+                stats.staleBytes += ENTRY_BYTES + estimateBytes(value);
+            }
+            stats.estimatedBytes += ENTRY_BYTES + estimateBytes(value);
+        }
+        stats.estimatedBytes += 16L + 4L * table.length;
+        return stats;
+    }
+
+    private static Object[] table(Thread thread) {
+        if (!supported()) {
+            return new Object[0];
+        }
+        try {
+            Object map = THREAD_LOCALS.get(thread);
+            if (map == null) {
+                return new Object[0];
+            }
+            Object[] table = (Object[]) TABLE.get(map);
+            // 拷贝一份，避免遍历过程中目标线程扩容
+            return table == null ? new Object[0] : table.clone();
+        } catch (IllegalAccessException e) {
+            return new Object[0];
+        }
+    }
+
+    private static Object value(Object entry) {
+        try {
+            return VALUE.get(entry);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    // Entry对象本身：对象头 + referent/queue/next/discovered + value
+    private static final long ENTRY_BYTES = 40;
+
+    /**
+     * 只看一层的粗略估算，不递归遍历对象图
+     */
+    static long estimateBytes(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return 24 + 16 + 2L * ((String) value).length();
+        }
+        if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Class<?> component = value.getClass().getComponentType();
+            int elementBytes = component == long.class || component == double.class ? 8
+                    : component == byte.class || component == boolean.class ? 1
+                    : component == char.class || component == short.class ? 2 : 4;
+            return 16 + (long) elementBytes * length;
+        }
+        if (value instanceof Collection) {
+            return 48 + 32L * ((Collection<?>) value).size();
+        }
+        if (value instanceof Map) {
+            return 64 + 48L * ((Map<?, ?>) value).size();
+        }
+        return 16;
+    }
+
+    @Data
+    public static class ThreadStats {
+        private String threadName;
+        private int tableLength;
+        private int entries;
+        private int stale;
+        private long staleBytes;
+        private long estimatedBytes;
+    }
+}
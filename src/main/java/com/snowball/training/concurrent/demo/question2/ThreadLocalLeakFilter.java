@@ -0,0 +1,84 @@
+package com.snowball.training.concurrent.demo.question2;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按sampleRate抽样请求，对比请求前后工作线程上的ThreadLocal，记录请求中设置、请求结束后仍未清除的ThreadLocal
+ * 必须排在最外层，否则会把RequestContextBindingFilter这类还没来得及清理的ThreadLocal也算进去
+ * 未被抽中的请求只多一次随机数判断
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ThreadLocalLeakFilter extends OncePerRequestFilter {
+
+    @Value("${demo.threadlocal.sample-rate:100}")
+    private int sampleRate;
+
+    private final LongAdder sampledRequests = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> leaks = new ConcurrentHashMap<>();
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (sampleRate <= 0 || !ThreadLocalInspector.supported()
+                || ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        Thread thread = Thread.currentThread();
+        Map<ThreadLocal<?>, Object> before = ThreadLocalInspector.liveEntries(thread);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            sampledRequests.increment();
+            ThreadLocalInspector.liveEntries(thread).forEach((threadLocal, value) -> {
+                // 请求前就有且值没变的认为是线程自身的状态，不算泄漏
+                if (!before.containsKey(threadLocal) || before.get(threadLocal) != value) {
+                    leaks.computeIfAbsent(describe(threadLocal, value), k -> new LongAdder()).increment();
+                }
+            });
+        }
+    }
+
+    private static String describe(ThreadLocal<?> threadLocal, Object value) {
+        return threadLocal.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(threadLocal))
+                + " value=" + (value == null ? "null" : value.getClass().getName());
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getSampledRequests() {
+        return sampledRequests.sum();
+    }
+
+    /**
+     * ThreadLocal描述 -> 请求结束后仍未清除的次数
+     */
+    public Map<String, Long> getLeaks() {
+        Map<String, Long> result = new TreeMap<>();
+        leaks.forEach((key, count) -> result.put(key, count.sum()));
+        return result;
+    }
+
+    public void reset() {
+        sampledRequests.reset();
+        leaks.clear();
+    }
+}
@@ -1,5 +1,6 @@
 package com.snowball.training.concurrent.demo.question2;
 
+import com.snowball.training.concurrent.demo.common.RequestContext;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -7,6 +8,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("q2")
@@ -41,4 +43,24 @@ public class ThreadLocalMisuseController {
             currentUser.remove();
         }
     }
+
+    private static final RequestContext.Key<Integer> CURRENT_USER = RequestContext.newKey("currentUser");
+
+    /**
+     * 使用RequestContext保存用户信息，由过滤器负责清理，不需要手动remove
+     * 异步任务通过wrapSupplier带上提交时的上下文
+     */
+    @GetMapping("context")
+    public Map context(@RequestParam("userId") Integer userId) {
+        String before = Thread.currentThread().getName() + ":" + RequestContext.get(CURRENT_USER);
+        RequestContext.set(CURRENT_USER, userId);
+        String after = Thread.currentThread().getName() + ":" + RequestContext.get(CURRENT_USER);
+        String async = CompletableFuture.supplyAsync(RequestContext.wrapSupplier(
+                () -> Thread.currentThread().getName() + ":" + RequestContext.get(CURRENT_USER))).join();
+        Map result = new HashMap();
+        result.put("before", before);
+        result.put("after", after);
+        result.put("async", async);
+        return result;
+    }
 }
@@ -0,0 +1,556 @@
+package com.snowball.training.concurrent.demo.question3;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 根据观察到的读写比例在两种存储之间切换的List
+ * COPY_ON_WRITE：和CopyOnWriteArrayList一样，读直接访问volatile数组，每次写复制整个数组，适合读多写少
+ * LOCKED：分段的可扩容数组，写不复制，每段一把StampedLock，读用乐观读，只有和同一段的写冲突时才退化为读锁，适合写多
+ * 读按1/64抽样计数，写在锁内精确计数，每windowOps次操作按代价评估一次：
+ * COPY_ON_WRITE的代价是写次数乘以元素数（每次写复制整个数组），LOCKED的代价是读次数乘以lockedReadCost加上写次数，
+ * 一方的代价超过另一方两倍才切换，避免在临界点来回抖动；所以元素越多，需要越高的读写比才会选择COPY_ON_WRITE
+ * 切换在写锁内把数据复制到新存储后替换引用，旧存储不再被修改，正在读旧存储的线程不受影响
+ * 评估和切换只由写线程或调用方传入的migrator执行：读线程发现攒够一个窗口时只向migrator提交一次评估，自己不拿锁也不复制数据
+ * 没有传入migrator时读不会触发评估，要等下一次写
+ * 所有写操作都持有同一把写锁，两种模式下写都是串行的，差别在于每次写要不要复制数组
+ */
+public class AdaptiveList<E> extends AbstractList<E> implements RandomAccess {
+
+    public enum Mode {
+        COPY_ON_WRITE, LOCKED
+    }
+
+    private static final int READ_SAMPLE_MASK = 63;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final boolean adaptive;
+    private final int windowOps;
+    private final int lockedReadCost;
+    // 读多写少时代替读线程做评估和迁移，由调用方管理生命周期，可以为null
+    private final Executor migrator;
+    private final LongAdder sampledReads = new LongAdder();
+    private final AtomicBoolean evaluationQueued = new AtomicBoolean();
+
+    private volatile Store store;
+    // 以下字段只在持有writeLock时修改
+    private volatile long windowWrites;
+    private volatile long windowReadsBase;
+    private volatile int switchCount;
+
+    public AdaptiveList() {
+        this((Executor) null);
+    }
+
+    public AdaptiveList(Executor migrator) {
+        this(2000, 32, migrator);
+    }
+
+    /**
+     * @param windowOps 每多少次操作评估一次
+     * @param lockedReadCost LOCKED模式下一次读相对复制一个元素的代价，包含乐观读失败后退化为读锁的开销，是经验值
+     */
+    public AdaptiveList(int windowOps, int lockedReadCost) {
+        this(windowOps, lockedReadCost, null);
+    }
+
+    /**
+     * @param migrator 读触发的评估和迁移在这里执行
+     */
+    public AdaptiveList(int windowOps, int lockedReadCost, Executor migrator) {
+        if (windowOps <= 0 || lockedReadCost <= 0) {
+            throw new IllegalArgumentException("windowOps and lockedReadCost must be positive");
+        }
+        this.adaptive = true;
+        this.windowOps = windowOps;
+        this.lockedReadCost = lockedReadCost;
+        this.migrator = migrator;
+        this.store = new CowStore(new Object[0]);
+    }
+
+    private AdaptiveList(Mode mode) {
+        this.adaptive = false;
+        this.windowOps = 0;
+        this.lockedReadCost = 0;
+        this.migrator = null;
+        this.store = newStore(mode, new Object[0]);
+    }
+
+    /**
+     * 固定使用一种存储、不做切换的List，用来和自适应的效果对比
+     */
+    public static <E> AdaptiveList<E> fixed(Mode mode) {
+        return new AdaptiveList<>(mode);
+    }
+
+    public Mode mode() {
+        return store.mode();
+    }
+
+    public int switchCount() {
+        return switchCount;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Store current = store;
+        if (adaptive && (ThreadLocalRandom.current().nextInt() & READ_SAMPLE_MASK) == 0) {
+            onSampledRead();
+        }
+        return (E) current.get(index);
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public boolean add(E e) {
+        writeLock.lock();
+        try {
+            Store current = store;
+            current.insert(current.size(), e);
+            afterWrite();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void add(int index, E element) {
+        writeLock.lock();
+        try {
+            Store current = store;
+            if (index < 0 || index > current.size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.size());
+            }
+            current.insert(index, element);
+            afterWrite();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        Object[] elements = c.toArray();
+        if (elements.length == 0) {
+            return false;
+        }
+        writeLock.lock();
+        try {
+            // 批量写入只算一次写，直接换成包含新数据的同类型存储
+            Object[] current = store.toArray();
+            Object[] next = Arrays.copyOf(current, current.length + elements.length);
+            System.arraycopy(elements, 0, next, current.length, elements.length);
+            store = newStore(store.mode(), next);
+            afterWrite();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        writeLock.lock();
+        try {
+            E old = (E) store.set(index, element);
+            afterWrite();
+            return old;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        writeLock.lock();
+        try {
+            E old = (E) store.remove(index);
+            afterWrite();
+            return old;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        writeLock.lock();
+        try {
+            int index = indexOf(o);
+            if (index < 0) {
+                return false;
+            }
+            store.remove(index);
+            afterWrite();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        writeLock.lock();
+        try {
+            store = newStore(store.mode(), new Object[0]);
+            afterWrite();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 遍历的是调用时的快照，不支持通过迭代器修改
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        return Collections.unmodifiableList((List<E>) Arrays.asList(store.toArray())).iterator();
+    }
+
+    @Override
+    public Object[] toArray() {
+        return store.toArray();
+    }
+
+    private void afterWrite() {
+        if (adaptive) {
+            windowWrites++;
+            evaluate();
+        }
+    }
+
+    private void onSampledRead() {
+        sampledReads.increment();
+        if (migrator == null || evaluationQueued.get()) {
+            return;
+        }
+        long ops = (sampledReads.sum() - windowReadsBase) * (READ_SAMPLE_MASK + 1) + windowWrites;
+        // 读多写少时可能很久没有写来触发评估，交给migrator，读线程不参与加锁和复制
+        if (ops >= windowOps && evaluationQueued.compareAndSet(false, true)) {
+            try {
+                migrator.execute(this::evaluateInBackground);
+            } catch (RejectedExecutionException e) {
+                // migrator忙或已关闭，之后的抽样读再试
+                evaluationQueued.set(false);
+            }
+        }
+    }
+
+    private void evaluateInBackground() {
+        writeLock.lock();
+        try {
+            evaluationQueued.set(false);
+            evaluate();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 只能在持有writeLock时调用
+     */
+    private void evaluate() {
+        long readsSum = sampledReads.sum();
+        long reads = (readsSum - windowReadsBase) * (READ_SAMPLE_MASK + 1);
+        long writes = windowWrites;
+        if (reads + writes < windowOps) {
+            return;
+        }
+        double cowCost = (double) writes * store.size();
+        double lockedCost = (double) reads * lockedReadCost + writes;
+        Mode current = store.mode();
+        Mode target = current;
+        if (current == Mode.COPY_ON_WRITE && cowCost > 2 * lockedCost) {
+            target = Mode.LOCKED;
+        } else if (current == Mode.LOCKED && lockedCost > 2 * cowCost) {
+            target = Mode.COPY_ON_WRITE;
+        }
+        if (target != current) {
+            store = newStore(target, store.toArray());
+            switchCount++;
+        }
+        windowReadsBase = readsSum;
+        windowWrites = 0;
+    }
+
+    private static Store newStore(Mode mode, Object[] data) {
+        return mode == Mode.COPY_ON_WRITE ? new CowStore(data) : new LockedStore(data);
+    }
+
+    /**
+     * 存储的写方法只会在持有AdaptiveList.writeLock时调用
+     */
+    private static abstract class Store {
+        abstract Mode mode();
+
+        abstract Object get(int index);
+
+        abstract int size();
+
+        abstract void insert(int index, Object element);
+
+        abstract Object set(int index, Object element);
+
+        abstract Object remove(int index);
+
+        abstract Object[] toArray();
+    }
+
+    private static final class CowStore extends Store {
+        private volatile Object[] array;
+
+        CowStore(Object[] array) {
+            this.array = array;
+        }
+
+        @Override
+        Mode mode() {
+            return Mode.COPY_ON_WRITE;
+        }
+
+        @Override
+        Object get(int index) {
+            return array[index];
+        }
+
+        @Override
+        int size() {
+            return array.length;
+        }
+
+        @Override
+        void insert(int index, Object element) {
+            Object[] current = array;
+            Object[] next = new Object[current.length + 1];
+            System.arraycopy(current, 0, next, 0, index);
+            next[index] = element;
+            System.arraycopy(current, index, next, index + 1, current.length - index);
+            array = next;
+        }
+
+        @Override
+        Object set(int index, Object element) {
+            Object[] next = array.clone();
+            Object old = next[index];
+            next[index] = element;
+            array = next;
+            return old;
+        }
+
+        @Override
+        Object remove(int index) {
+            Object[] current = array;
+            Object old = current[index];
+            Object[] next = new Object[current.length - 1];
+            System.arraycopy(current, 0, next, 0, index);
+            System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+            array = next;
+            return old;
+        }
+
+        @Override
+        Object[] toArray() {
+            return array.clone();
+        }
+    }
+
+    /**
+     * 按下标分段的可扩容数组，每段SEGMENT_SIZE个元素、一把StampedLock，写只锁受影响的段
+     * 追加和set只锁一段，只有读同一段的乐观读会失败；中间插入/删除要移动后面所有元素，按顺序锁住从该位置到末尾的段
+     * size是volatile，读先拿段的stamp再读size和元素，写在持有段写锁时修改元素和size，validate通过说明读到的是一致的
+     * 段只增不减，删除后空出来的段留给之后的追加使用
+     */
+    private static final class LockedStore extends Store {
+        private static final int SEGMENT_SHIFT = 8;
+        private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+        private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+        private static final class Segment {
+            final StampedLock lock = new StampedLock();
+            final Object[] elements = new Object[SEGMENT_SIZE];
+        }
+
+        // 只在写时扩展，先发布新的段再增加size，读到的size对应的段一定存在
+        private volatile Segment[] segments;
+        private volatile int size;
+
+        LockedStore(Object[] data) {
+            Segment[] initial = new Segment[Math.max(1, (data.length >>> SEGMENT_SHIFT) + 1)];
+            for (int i = 0; i < initial.length; i++) {
+                initial[i] = new Segment();
+            }
+            for (int i = 0; i < data.length; i += SEGMENT_SIZE) {
+                System.arraycopy(data, i, initial[i >>> SEGMENT_SHIFT].elements, 0, Math.min(SEGMENT_SIZE, data.length - i));
+            }
+            this.segments = initial;
+            this.size = data.length;
+        }
+
+        @Override
+        Mode mode() {
+            return Mode.LOCKED;
+        }
+
+        @Override
+        Object get(int index) {
+            int s = size;
+            if (index < 0 || index >= s) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + s);
+            }
+            Segment segment = segments[index >>> SEGMENT_SHIFT];
+            long stamp = segment.lock.tryOptimisticRead();
+            if (stamp != 0) {
+                Object e = segment.elements[index & SEGMENT_MASK];
+                s = size;
+                if (segment.lock.validate(stamp) && index < s) {
+                    return e;
+                }
+            }
+            stamp = segment.lock.readLock();
+            try {
+                s = size;
+                if (index >= s) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + s);
+                }
+                return segment.elements[index & SEGMENT_MASK];
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        void insert(int index, Object element) {
+            int n = size;
+            if (n == segments.length << SEGMENT_SHIFT) {
+                Segment[] grown = Arrays.copyOf(segments, segments.length + 1);
+                grown[grown.length - 1] = new Segment();
+                segments = grown;
+            }
+            Segment[] segs = segments;
+            int first = index >>> SEGMENT_SHIFT;
+            int last = n >>> SEGMENT_SHIFT;
+            long[] stamps = lock(segs, first, last);
+            try {
+                // 每段整体后移一位，挤出去的最后一个元素放到下一段的开头
+                Object carry = element;
+                int offset = index & SEGMENT_MASK;
+                for (int k = first; k <= last; k++) {
+                    Object[] a = segs[k].elements;
+                    int used = k == last ? n & SEGMENT_MASK : SEGMENT_SIZE;
+                    Object out = used == SEGMENT_SIZE ? a[SEGMENT_SIZE - 1] : null;
+                    System.arraycopy(a, offset, a, offset + 1, Math.min(used, SEGMENT_SIZE - 1) - offset);
+                    a[offset] = carry;
+                    carry = out;
+                    offset = 0;
+                }
+                size = n + 1;
+            } finally {
+                unlock(segs, first, stamps);
+            }
+        }
+
+        @Override
+        Object set(int index, Object element) {
+            int s = size;
+            if (index < 0 || index >= s) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + s);
+            }
+            Segment segment = segments[index >>> SEGMENT_SHIFT];
+            long stamp = segment.lock.writeLock();
+            try {
+                Object old = segment.elements[index & SEGMENT_MASK];
+                segment.elements[index & SEGMENT_MASK] = element;
+                return old;
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+
+        @Override
+        Object remove(int index) {
+            int n = size;
+            if (index < 0 || index >= n) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + n);
+            }
+            Segment[] segs = segments;
+            int first = index >>> SEGMENT_SHIFT;
+            int last = (n - 1) >>> SEGMENT_SHIFT;
+            long[] stamps = lock(segs, first, last);
+            try {
+                Object old = segs[first].elements[index & SEGMENT_MASK];
+                // 每段整体前移一位，空出来的最后一个位置用下一段的第一个元素补上
+                int offset = index & SEGMENT_MASK;
+                for (int k = first; k <= last; k++) {
+                    Object[] a = segs[k].elements;
+                    int used = k == last ? ((n - 1) & SEGMENT_MASK) + 1 : SEGMENT_SIZE;
+                    System.arraycopy(a, offset + 1, a, offset, used - offset - 1);
+                    a[used - 1] = k < last ? segs[k + 1].elements[0] : null;
+                    offset = 0;
+                }
+                size = n - 1;
+                return old;
+            } finally {
+                unlock(segs, first, stamps);
+            }
+        }
+
+        /**
+         * 写由AdaptiveList.writeLock串行化，读也按下标顺序加锁，不会死锁
+         */
+        private static long[] lock(Segment[] segs, int first, int last) {
+            long[] stamps = new long[last - first + 1];
+            for (int k = first; k <= last; k++) {
+                stamps[k - first] = segs[k].lock.writeLock();
+            }
+            return stamps;
+        }
+
+        private static void unlock(Segment[] segs, int first, long[] stamps) {
+            for (int i = stamps.length - 1; i >= 0; i--) {
+                segs[first + i].lock.unlockWrite(stamps[i]);
+            }
+        }
+
+        @Override
+        Object[] toArray() {
+            Segment[] segs = segments;
+            long[] stamps = new long[segs.length];
+            for (int k = 0; k < segs.length; k++) {
+                stamps[k] = segs[k].lock.readLock();
+            }
+            try {
+                // 锁住所有段后只有追加到新段的写还能进行，超出这些段的部分不算在快照里
+                int n = Math.min(size, segs.length << SEGMENT_SHIFT);
+                Object[] result = new Object[n];
+                for (int i = 0; i < n; i += SEGMENT_SIZE) {
+                    System.arraycopy(segs[i >>> SEGMENT_SHIFT].elements, 0, result, i, Math.min(SEGMENT_SIZE, n - i));
+                }
+                return result;
+            } finally {
+                for (int k = segs.length - 1; k >= 0; k--) {
+                    segs[k].lock.unlockRead(stamps[k]);
+                }
+            }
+        }
+    }
+}
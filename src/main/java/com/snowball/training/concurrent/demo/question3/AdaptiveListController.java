@@ -0,0 +1,78 @@
+package com.snowball.training.concurrent.demo.question3;
+
+import com.snowball.training.concurrent.demo.common.DataGenerator;
+import com.snowball.training.concurrent.demo.question5.DynamicThreadPoolRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+@RestController
+@RequestMapping("q3/adaptive")
+@Slf4j
+public class AdaptiveListController {
+
+    // 读多写少时AdaptiveList在这个线程池里评估和切换存储，随Spring容器关闭
+    private final Executor migrator;
+
+    public AdaptiveListController(DynamicThreadPoolRegistry registry) {
+        this.migrator = registry.get("adaptivelist");
+    }
+
+    /**
+     * 按readRatios依次回放多个阶段的读写混合负载，每个阶段opsPerPhase次操作，读的比例由readRatios指定
+     * 同一套负载分别跑在自适应List和固定两种存储的List上，返回每个阶段的吞吐，可以直接按phase画折线图
+     */
+    @GetMapping
+    public Map<String, Object> replay(@RequestParam(value = "readRatios", defaultValue = "0.999,0.2,0.9999,0.5") double[] readRatios,
+                                      @RequestParam(value = "opsPerPhase", defaultValue = "20000") int opsPerPhase,
+                                      @RequestParam(value = "initialSize", defaultValue = "1000") int initialSize) {
+        Map<String, Supplier<AdaptiveList<Integer>>> contenders = new LinkedHashMap<>();
+        contenders.put("adaptive", () -> new AdaptiveList<>(migrator));
+        contenders.put("copyOnWrite", () -> AdaptiveList.fixed(AdaptiveList.Mode.COPY_ON_WRITE));
+        contenders.put("locked", () -> AdaptiveList.fixed(AdaptiveList.Mode.LOCKED));
+
+        List<Map<String, Object>> phases = new ArrayList<>();
+        for (int i = 0; i < readRatios.length; i++) {
+            Map<String, Object> phase = new LinkedHashMap<>();
+            phase.put("phase", i + 1);
+            phase.put("readRatio", readRatios[i]);
+            phases.add(phase);
+        }
+        contenders.forEach((name, supplier) -> {
+            AdaptiveList<Integer> list = supplier.get();
+            list.addAll(Arrays.asList(DataGenerator.sequence(1, initialSize)));
+            for (int i = 0; i < readRatios.length; i++) {
+                double readRatio = readRatios[i];
+                long begin = System.nanoTime();
+                IntStream.range(0, opsPerPhase).parallel().forEach(__ -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    if (random.nextDouble() < readRatio) {
+                        list.get(random.nextInt(initialSize));
+                    } else {
+                        list.add(random.nextInt(initialSize));
+                    }
+                });
+                long took = System.nanoTime() - begin;
+                Map<String, Object> phase = phases.get(i);
+                phase.put(name, (long) (opsPerPhase * 1e9 / Math.max(took, 1)));
+                if (list.switchCount() > 0 || "adaptive".equals(name)) {
+                    phase.put(name + "Mode", list.mode());
+                }
+            }
+            log.info("{} size:{} switches:{}", name, list.size(), list.switchCount());
+        });
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("unit", "ops/s");
+        result.put("phases", phases);
+        return result;
+    }
+}
@@ -0,0 +1,96 @@
+package com.snowball.training.concurrent.demo.question3;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 只能追加的并发List，由一组分段数组组成
+ * 第k段的长度是FIRST_CHUNK_SIZE << k，段在第一次用到时才分配，已有元素永远不会复制或移动
+ * add用原子自增在tail上占一个下标，然后写入对应段的槽位，写入之间没有锁也不会互相等待
+ * 写完后尝试把published推进到第一个还没写入的下标，推进不了说明前面有线程还没写完，由它写完后接着推进
+ * get和size只看published以内的下标，这些槽位一定已经写好，读不会等待任何写线程
+ * 因此add返回时元素不一定已经计入size：前面占了下标的线程写完之前，后面写好的元素暂时不可见
+ * 元素不能为null，不支持删除和修改
+ */
+public class ConcurrentAppendList<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final int FIRST_CHUNK_SHIFT = 10;
+    private static final int FIRST_CHUNK_SIZE = 1 << FIRST_CHUNK_SHIFT;
+    // 保证index + FIRST_CHUNK_SIZE不溢出
+    private static final int MAX_SIZE = Integer.MAX_VALUE - FIRST_CHUNK_SIZE;
+    private static final int MAX_CHUNKS = 31 - FIRST_CHUNK_SHIFT;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<E>> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    // 已占用的下标数，包括已占用但还没写入完成的
+    private final AtomicInteger tail = new AtomicInteger();
+    // 已发布的下标数，[0, published)的槽位都已经写入
+    private final AtomicInteger published = new AtomicInteger();
+
+    @Override
+    public boolean add(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        int index = tail.getAndIncrement();
+        if (index < 0 || index >= MAX_SIZE) {
+            tail.decrementAndGet();
+            throw new IllegalStateException("list is full");
+        }
+        int pos = index + FIRST_CHUNK_SIZE;
+        int chunkIndex = chunkIndex(pos);
+        chunk(chunkIndex).set(pos - (FIRST_CHUNK_SIZE << chunkIndex), e);
+        publish();
+        return true;
+    }
+
+    /**
+     * 先写槽位再检查published，推进的线程先推进再检查槽位，所以最后一个写完的线程一定能看到前面所有已写入的槽位
+     */
+    private void publish() {
+        int p;
+        while ((p = published.get()) < tail.get() && p < MAX_SIZE && slot(p) != null) {
+            published.compareAndSet(p, p + 1);
+        }
+    }
+
+    private E slot(int index) {
+        int pos = index + FIRST_CHUNK_SIZE;
+        int chunkIndex = chunkIndex(pos);
+        AtomicReferenceArray<E> chunk = chunks.get(chunkIndex);
+        return chunk == null ? null : chunk.get(pos - (FIRST_CHUNK_SIZE << chunkIndex));
+    }
+
+    @Override
+    public E get(int index) {
+        int size = published.get();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return slot(index);
+    }
+
+    @Override
+    public int size() {
+        return published.get();
+    }
+
+    private static int chunkIndex(int pos) {
+        return 31 - Integer.numberOfLeadingZeros(pos) - FIRST_CHUNK_SHIFT;
+    }
+
+    private AtomicReferenceArray<E> chunk(int chunkIndex) {
+        AtomicReferenceArray<E> chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            // 多个线程同时分配时只有一个能成功，其他线程用成功的那个
+            AtomicReferenceArray<E> created = new AtomicReferenceArray<>(FIRST_CHUNK_SIZE << chunkIndex);
+            if (chunks.compareAndSet(chunkIndex, null, created)) {
+                chunk = created;
+            } else {
+                chunk = chunks.get(chunkIndex);
+            }
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,97 @@
+package com.snowball.training.concurrent.demo.question3;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 元素为int的写时复制列表
+ * 数据直接放在int[]里，没有Integer对象头和引用，100万个元素只占4MB，随机读是一次数组下标访问而不是再跳一次指针
+ * 写入时复制新数组后整体替换，读不加锁；snapshot()拿到的是某一时刻不可变的数据
+ */
+public class CopyOnWriteIntList {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile int[] array = new int[0];
+
+    public int get(int index) {
+        return array[index];
+    }
+
+    public int size() {
+        return array.length;
+    }
+
+    public void add(int value) {
+        lock.lock();
+        try {
+            int[] current = array;
+            int[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = value;
+            array = next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void addAll(int[] values) {
+        if (values.length == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            int[] current = array;
+            int[] next = Arrays.copyOf(current, current.length + values.length);
+            System.arraycopy(values, 0, next, current.length, values.length);
+            array = next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int set(int index, int value) {
+        lock.lock();
+        try {
+            int[] next = array.clone();
+            int old = next[index];
+            next[index] = value;
+            array = next;
+            return old;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(array);
+    }
+
+    /**
+     * 数组对象头16字节加每个元素4字节
+     */
+    public long estimatedBytes() {
+        return 16 + 4L * array.length;
+    }
+
+    /**
+     * 列表某一时刻的只读视图，多次读取之间不会看到其他线程的写入
+     */
+    public static final class Snapshot {
+        private final int[] array;
+
+        private Snapshot(int[] array) {
+            this.array = array;
+        }
+
+        public int get(int index) {
+            return array[index];
+        }
+
+        public int size() {
+            return array.length;
+        }
+
+        public int[] toArray() {
+            return array.clone();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.snowball.training.concurrent.demo.question3;
 
+import com.snowball.training.concurrent.demo.common.DataGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.StopWatch;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -9,7 +10,6 @@ import org.springframework.web.bind.annotation.RestController;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 @RestController
@@ -25,6 +25,8 @@ public class CopyOnWriteListMisuseController {
     public Map testWrite() {
         List<Integer> copyOnWriteArrayList = new CopyOnWriteArrayList<>();
         List<Integer> synchronizedList = Collections.synchronizedList(new ArrayList<>());
+        WriteCombiningCopyOnWriteList<Integer> writeCombiningList = new WriteCombiningCopyOnWriteList<>();
+        List<Integer> concurrentAppendList = new ConcurrentAppendList<>();
         StopWatch stopWatch = new StopWatch();
         int loopCount = 100000;
         stopWatch.start("Write:copyOnWriteArrayList");
@@ -35,10 +37,21 @@ public class CopyOnWriteListMisuseController {
         // 循环100000次并发往加锁的ArrayList写入随机元素
         IntStream.rangeClosed(1, loopCount).parallel().forEach(__ -> synchronizedList.add(ThreadLocalRandom.current().nextInt(loopCount)));
         stopWatch.stop();
+        stopWatch.start("Write:writeCombiningList");
+        // 并发写入的元素合并成批，每批只复制一次数组
+        IntStream.rangeClosed(1, loopCount).parallel().forEach(__ -> writeCombiningList.add(ThreadLocalRandom.current().nextInt(loopCount)));
+        stopWatch.stop();
+        stopWatch.start("Write:concurrentAppendList");
+        // 分段追加，既不复制数组也不加锁
+        IntStream.rangeClosed(1, loopCount).parallel().forEach(__ -> concurrentAppendList.add(ThreadLocalRandom.current().nextInt(loopCount)));
+        stopWatch.stop();
         log.info(stopWatch.prettyPrint());
         Map result = new HashMap();
         result.put("copyOnWriteArrayList", copyOnWriteArrayList.size());
         result.put("synchronizedList", synchronizedList.size());
+        result.put("writeCombiningList", writeCombiningList.size());
+        result.put("writeCombiningAverageBatch", writeCombiningList.averageBatchSize());
+        result.put("concurrentAppendList", concurrentAppendList.size());
         return result;
     }
 
@@ -53,24 +66,65 @@ public class CopyOnWriteListMisuseController {
         List<Integer> synchronizedList = Collections.synchronizedList(new ArrayList<>());
         addAll(copyOnWriteArrayList);
         addAll(synchronizedList);
+        List<Integer> writeCombiningList = new WriteCombiningCopyOnWriteList<>();
+        addAll(writeCombiningList);
+        List<Integer> concurrentAppendList = new ConcurrentAppendList<>();
+        addAll(concurrentAppendList);
+        CopyOnWriteIntList copyOnWriteIntList = new CopyOnWriteIntList();
+        copyOnWriteIntList.addAll(IntStream.rangeClosed(1, 1000000).toArray());
         StopWatch stopWatch = new StopWatch();
         int loopCount = 1000000;
         int count = copyOnWriteArrayList.size();
+        // 读到的值累加起来返回，避免JIT把结果没被使用的get优化掉，只剩下边界检查
+        Map<String, Long> readChecksums = new LinkedHashMap<>();
         stopWatch.start("Read:copyOnWriteArrayList");
-        IntStream.rangeClosed(1, loopCount).parallel().forEach(__ -> copyOnWriteArrayList.get(ThreadLocalRandom.current().nextInt(count)));
+        readChecksums.put("copyOnWriteArrayList", IntStream.rangeClosed(1, loopCount).parallel()
+                .mapToLong(__ -> copyOnWriteArrayList.get(ThreadLocalRandom.current().nextInt(count))).sum());
         stopWatch.stop();
         stopWatch.start("Read:synchronizedList");
-        IntStream.range(0, loopCount).parallel().forEach(__ -> synchronizedList.get(ThreadLocalRandom.current().nextInt(count)));
+        readChecksums.put("synchronizedList", IntStream.range(0, loopCount).parallel()
+                .mapToLong(__ -> synchronizedList.get(ThreadLocalRandom.current().nextInt(count))).sum());
+        stopWatch.stop();
+        stopWatch.start("Read:writeCombiningList");
+        readChecksums.put("writeCombiningList", IntStream.range(0, loopCount).parallel()
+                .mapToLong(__ -> writeCombiningList.get(ThreadLocalRandom.current().nextInt(count))).sum());
+        stopWatch.stop();
+        stopWatch.start("Read:concurrentAppendList");
+        readChecksums.put("concurrentAppendList", IntStream.range(0, loopCount).parallel()
+                .mapToLong(__ -> concurrentAppendList.get(ThreadLocalRandom.current().nextInt(count))).sum());
+        stopWatch.stop();
+        stopWatch.start("Read:copyOnWriteIntList");
+        readChecksums.put("copyOnWriteIntList", IntStream.range(0, loopCount).parallel()
+                .mapToLong(__ -> copyOnWriteIntList.get(ThreadLocalRandom.current().nextInt(count))).sum());
         stopWatch.stop();
         log.info(stopWatch.prettyPrint());
         Map result = new HashMap();
         result.put("copyOnWriteArrayList", copyOnWriteArrayList.size());
         result.put("synchronizedList", synchronizedList.size());
+        result.put("writeCombiningList", writeCombiningList.size());
+        result.put("concurrentAppendList", concurrentAppendList.size());
+        result.put("copyOnWriteIntList", copyOnWriteIntList.size());
+        // 内存占用是估算值：装箱的List按每个元素一个4字节引用加一个16字节的Integer计算
+        Map<String, Long> footprintBytes = new LinkedHashMap<>();
+        footprintBytes.put("copyOnWriteArrayList", boxedBytes(copyOnWriteArrayList.size()));
+        footprintBytes.put("synchronizedList", boxedBytes(synchronizedList.size()));
+        footprintBytes.put("copyOnWriteIntList", copyOnWriteIntList.estimatedBytes());
+        result.put("footprintBytes", footprintBytes);
+        Map<String, Long> readOpsPerSecond = new LinkedHashMap<>();
+        for (StopWatch.TaskInfo task : stopWatch.getTaskInfo()) {
+            readOpsPerSecond.put(task.getTaskName(), (long) (loopCount / Math.max(task.getTimeSeconds(), 1e-9)));
+        }
+        result.put("readOpsPerSecond", readOpsPerSecond);
+        result.put("readChecksums", readChecksums);
         return result;
     }
 
+    private long boxedBytes(int size) {
+        return 16 + 4L * size + 16L * size;
+    }
+
     private void addAll(List<Integer> list) {
-        list.addAll(IntStream.rangeClosed(1, 1000000).boxed().collect(Collectors.toList()));
+        list.addAll(Arrays.asList(DataGenerator.sequence(1, 1000000)));
     }
 
 }
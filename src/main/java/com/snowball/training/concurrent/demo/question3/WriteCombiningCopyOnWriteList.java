@@ -0,0 +1,279 @@
+package com.snowball.training.concurrent.demo.question3;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 合并写入的写时复制List
+ * 读和CopyOnWriteArrayList一样直接读volatile数组，不加锁，迭代器遍历的是快照
+ * indexOf、contains、equals、subList、stream等多步读取的方法都只读一次数组，在同一个快照上完成
+ * add先把元素放进暂存队列再抢锁，拿到锁的线程把队列里所有等待的元素一次性复制进新数组发布，
+ * 其他线程拿到锁时发现自己的元素已经被发布就直接返回，高并发追加时很多次add只需要一次数组复制
+ * add返回时元素一定已经可见，但并发add之间的先后顺序不保证
+ */
+public class WriteCombiningCopyOnWriteList<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final Object[] EMPTY = new Object[0];
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private volatile Object[] array = EMPTY;
+    // 发布过的批次数和合并的元素数，用于观察合并效果
+    private long batches;
+    private long combined;
+
+    private static final class Pending {
+        final Object value;
+        volatile boolean published;
+
+        Pending(Object value) {
+            this.value = value;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) array[index];
+    }
+
+    @Override
+    public int size() {
+        return array.length;
+    }
+
+    @Override
+    public boolean add(E e) {
+        Pending node = new Pending(e);
+        pending.offer(node);
+        lock.lock();
+        try {
+            // 等锁期间可能已经被上一个拿到锁的线程顺带发布了
+            if (!node.published) {
+                combine();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * 把暂存队列中的元素复制进新数组，只能在持有锁时调用
+     */
+    private void combine() {
+        List<Pending> batch = new ArrayList<>();
+        Pending node;
+        while ((node = pending.poll()) != null) {
+            batch.add(node);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        Object[] current = array;
+        Object[] next = Arrays.copyOf(current, current.length + batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            next[current.length + i] = batch.get(i).value;
+        }
+        array = next;
+        for (Pending published : batch) {
+            published.published = true;
+        }
+        batches++;
+        combined += batch.size();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        Object[] elements = c.toArray();
+        if (elements.length == 0) {
+            return false;
+        }
+        lock.lock();
+        try {
+            combine();
+            Object[] current = array;
+            Object[] next = Arrays.copyOf(current, current.length + elements.length);
+            System.arraycopy(elements, 0, next, current.length, elements.length);
+            array = next;
+            // 批量写入也是一次数组复制
+            batches++;
+            combined += elements.length;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void add(int index, E element) {
+        lock.lock();
+        try {
+            combine();
+            Object[] current = array;
+            if (index < 0 || index > current.length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.length);
+            }
+            Object[] next = new Object[current.length + 1];
+            System.arraycopy(current, 0, next, 0, index);
+            next[index] = element;
+            System.arraycopy(current, index, next, index + 1, current.length - index);
+            array = next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        lock.lock();
+        try {
+            combine();
+            Object[] next = array.clone();
+            E old = (E) next[index];
+            next[index] = element;
+            array = next;
+            return old;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        lock.lock();
+        try {
+            combine();
+            Object[] current = array;
+            E old = (E) current[index];
+            Object[] next = new Object[current.length - 1];
+            System.arraycopy(current, 0, next, 0, index);
+            System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+            array = next;
+            return old;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            combine();
+            int index = indexOf(o);
+            if (index < 0) {
+                return false;
+            }
+            remove(index);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            combine();
+            array = EMPTY;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前数组的只读视图，AbstractList的默认实现每一步都重新读size()和get(i)，中间有写入就会混入两个版本
+     */
+    @SuppressWarnings("unchecked")
+    private List<E> snapshot() {
+        return Collections.unmodifiableList((List<E>) Arrays.asList(array));
+    }
+
+    /**
+     * 遍历的是调用时的快照，不支持通过迭代器修改
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return snapshot().iterator();
+    }
+
+    @Override
+    public ListIterator<E> listIterator() {
+        return snapshot().listIterator();
+    }
+
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        return snapshot().listIterator(index);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return Spliterators.spliterator(array, Spliterator.IMMUTABLE | Spliterator.ORDERED);
+    }
+
+    /**
+     * 返回调用时快照的只读子列表，不会反映之后的修改
+     */
+    @Override
+    public List<E> subList(int fromIndex, int toIndex) {
+        return snapshot().subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return snapshot().indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return snapshot().lastIndexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return snapshot().contains(o);
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        return snapshot().containsAll(c);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || snapshot().equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return snapshot().hashCode();
+    }
+
+    @Override
+    public Object[] toArray() {
+        return array.clone();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return snapshot().toArray(a);
+    }
+
+    /**
+     * 平均每次数组复制合并了多少次add
+     */
+    public double averageBatchSize() {
+        lock.lock();
+        try {
+            return batches == 0 ? 0 : (double) combined / batches;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -12,13 +12,12 @@ class Data {
         return counter;
     }
 
-    public synchronized void wrong() {
-        counter++;
+    // 相当于synchronized实例方法，锁的是当前实例，保护不了静态的counter
+    public void wrong() {
+        LockProfiler.runSynchronized(this, "q4.data.instance", () -> counter++);
     }
 
     public void right() {
-        synchronized (locker) {
-            counter++;
-        }
+        LockProfiler.runSynchronized(locker, "q4.data.locker", () -> counter++);
     }
 }
\ No newline at end of file
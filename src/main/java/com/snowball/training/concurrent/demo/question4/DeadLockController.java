@@ -6,11 +6,16 @@ import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -25,10 +30,17 @@ import java.util.stream.IntStream;
 public class DeadLockController {
 
     private ConcurrentHashMap<String, Item> items = new ConcurrentHashMap<>();
+    // 商品id映射到固定数量的锁，按锁下标顺序加锁
+    private StripedLockManager lockManager = new StripedLockManager(64);
+    // fast4使用的独立库存，只由lockManager的锁保护，不和items的Item.lock混用，下标就是id
+    private List<Item> stripedItems;
+    // 和items对应的无锁库存，商品下标就是id
+    private LockFreeInventory inventory = new LockFreeInventory(10, 1000);
 
     public DeadLockController() {
 
-        IntStream.range(0, 10).forEach(i -> items.put("item" + i, new Item("item" + i)));
+        IntStream.range(0, 10).forEach(i -> items.put("item" + i, new Item("item" + i, i)));
+        stripedItems = IntStream.range(0, 10).mapToObj(i -> new Item("item" + i, i)).collect(Collectors.toList());
     }
 
     private boolean createOrder(List<Item> order) {
@@ -95,12 +107,135 @@ public class DeadLockController {
         return success;
     }
 
+    @GetMapping("fast4")
+    public Map<String, Object> fast() {
+        long begin = System.currentTimeMillis();
+        lockManager.resetStats();
+        long success = IntStream.rangeClosed(1, 100).parallel()
+                .mapToObj(i -> createStripedOrder(IntStream.rangeClosed(1, 3)
+                        .mapToObj(__ -> stripedItems.get(ThreadLocalRandom.current().nextInt(stripedItems.size())))
+                        .collect(Collectors.toList())))
+                .filter(result -> result)
+                .count();
+        int totalRemaining = stripedItems.stream().mapToInt(item -> item.remaining).sum();
+        log.info("success:{} totalRemaining:{} took:{}ms items:{}",
+                success, totalRemaining, System.currentTimeMillis() - begin, stripedItems);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("success", success);
+        result.put("totalRemaining", totalRemaining);
+        result.put("locks", lockManager.stats());
+        return result;
+    }
+
+    /**
+     * 不用按名称排序，也不会因为超时下单失败；同一件商品可能出现多次，库存不足时回滚已经扣减的商品
+     */
+    private boolean createStripedOrder(List<Item> cart) {
+        try (StripedLockManager.Guard ignored = lockManager.lockAll(cart.stream().mapToLong(Item::getId).toArray())) {
+            for (int i = 0; i < cart.size(); i++) {
+                if (cart.get(i).remaining <= 0) {
+                    for (int j = 0; j < i; j++) {
+                        cart.get(j).remaining++;
+                    }
+                    return false;
+                }
+                cart.get(i).remaining--;
+            }
+            return true;
+        }
+    }
+
+    @GetMapping("lockfree4")
+    public Map<String, Object> lockFree() {
+        long begin = System.nanoTime();
+        long success = IntStream.rangeClosed(1, 100).parallel()
+                .mapToObj(i -> inventory.order(createCart().stream().mapToInt(Item::getId).toArray()))
+                .filter(result -> result)
+                .count();
+        long took = System.nanoTime() - begin;
+        log.info("success:{} totalRemaining:{} took:{}ms stats:{}",
+                success, inventory.totalRemaining(), TimeUnit.NANOSECONDS.toMillis(took), inventory.stats());
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("success", success);
+        result.put("totalRemaining", inventory.totalRemaining());
+        result.put("ordersPerSecond", (long) (100 * 1e9 / Math.max(took, 1)));
+        result.put("inventory", inventory.stats());
+        return result;
+    }
+
+    /**
+     * 同样数量的订单分别用right4的加锁方式和单写者流水线处理，对比吞吐和p99延迟
+     * 两种方式都使用独立的库存，不影响items
+     */
+    @GetMapping("pipeline4")
+    public Map<String, Object> pipeline(@RequestParam(value = "orders", defaultValue = "100000") int orders) throws InterruptedException {
+        int itemCount = items.size();
+        List<Item> lockedItems = IntStream.range(0, itemCount).mapToObj(i -> {
+            Item item = new Item("item" + i, i);
+            item.remaining = Integer.MAX_VALUE;
+            return item;
+        }).collect(Collectors.toList());
+        long[] latencies = new long[orders];
+        long begin = System.nanoTime();
+        long success = IntStream.range(0, orders).parallel()
+                .filter(i -> {
+                    long start = System.nanoTime();
+                    List<Item> cart = IntStream.rangeClosed(1, 3)
+                            .mapToObj(__ -> lockedItems.get(ThreadLocalRandom.current().nextInt(itemCount)))
+                            .sorted(Comparator.comparing(Item::getName))
+                            .collect(Collectors.toList());
+                    boolean result = createOrder(cart);
+                    latencies[i] = System.nanoTime() - start;
+                    return result;
+                })
+                .count();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("right4", orderStats(success, System.nanoTime() - begin, latencies));
+
+        long[] pipelineLatencies = new long[orders];
+        try (OrderPipeline pipeline = new OrderPipeline(itemCount, Integer.MAX_VALUE, 1024)) {
+            begin = System.nanoTime();
+            // 请求线程提交后不等待，延迟在Future完成时记录
+            CompletableFuture<?>[] futures = IntStream.range(0, orders).parallel()
+                    .mapToObj(i -> {
+                        long start = System.nanoTime();
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        return pipeline.submit(random.nextInt(itemCount), random.nextInt(itemCount), random.nextInt(itemCount))
+                                .whenComplete((r, e) -> pipelineLatencies[i] = System.nanoTime() - start);
+                    })
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(futures).join();
+            long took = System.nanoTime() - begin;
+            success = Arrays.stream(futures).filter(f -> Boolean.TRUE.equals(f.join())).count();
+            Map<String, Object> stats = orderStats(success, took, pipelineLatencies);
+            stats.putAll(pipeline.stats());
+            result.put("pipeline", stats);
+        }
+        log.info("pipeline4 orders:{} result:{}", orders, result);
+        return result;
+    }
+
+    private Map<String, Object> orderStats(long success, long tookNanos, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("success", success);
+        stats.put("tookMs", TimeUnit.NANOSECONDS.toMillis(tookNanos));
+        stats.put("ordersPerSecond", (long) (latencies.length * 1e9 / Math.max(tookNanos, 1)));
+        if (sorted.length > 0) {
+            stats.put("p50Micros", sorted[(int) Math.ceil(sorted.length * 0.5) - 1] / 1000);
+            stats.put("p99Micros", sorted[(int) Math.ceil(sorted.length * 0.99) - 1] / 1000);
+        }
+        return stats;
+    }
+
     @Data
     @RequiredArgsConstructor
     static class Item {
         final String name;
+        final int id;
         int remaining = 1000;
         @ToString.Exclude
-        ReentrantLock lock = new ReentrantLock();
+        ReentrantLock lock = new MonitoredLock("q4.item");
     }
 }
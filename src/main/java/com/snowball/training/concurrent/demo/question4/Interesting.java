@@ -10,6 +10,11 @@ public class Interesting {
     volatile int a = 1;
     volatile int b = 1;
     private static int COUNT = 1000000;
+    private final SeqLock seqLock = new SeqLock();
+
+    static int count() {
+        return COUNT;
+    }
 
     public synchronized void add() {
         log.info("add start");
@@ -41,4 +46,44 @@ public class Interesting {
         }
         log.info("compare done");
     }
+
+    /**
+     * 和add一样，写者之间仍然互斥，但每次修改a、b都用顺序锁包起来，读者不再需要拿同一把锁
+     */
+    public synchronized void addFast() {
+        log.info("add start");
+        for (int i = 0; i < COUNT; i++) {
+            seqLock.beginWrite();
+            a++;
+            b++;
+            seqLock.endWrite();
+        }
+        log.info("add done");
+    }
+
+    /**
+     * 不加锁读取一致的a、b，读取期间有写入就重读
+     * @return 重读次数
+     */
+    public long compareFast() {
+        log.info("compare start");
+        long retries = 0;
+        for (int i = 0; i < COUNT; i++) {
+            int x;
+            int y;
+            long stamp = seqLock.beginRead();
+            while (true) {
+                x = a;
+                y = b;
+                if (seqLock.validate(stamp)) {
+                    break;
+                }
+                retries++;
+                stamp = seqLock.beginRead();
+            }
+            Assert.isTrue(x == y, "a==b");
+        }
+        log.info("compare done, retries:{}", retries);
+        return retries;
+    }
 }
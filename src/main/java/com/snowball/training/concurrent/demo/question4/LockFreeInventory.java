@@ -0,0 +1,178 @@
+package com.snowball.training.concurrent.demo.question4;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁库存，一个订单中的多件商品要么全部扣减成功，要么都不扣
+ * 每件商品的库存是一个不可变的Stock对象，每次修改都换成新对象，对象本身就是版本号，不会出现ABA
+ * 下单时先乐观读出所有商品当前的Stock，库存足够就用多字CAS(MCAS)一次性替换成扣减后的新对象：
+ * 按商品下标从小到大把槽位CAS成描述符，全部成功后把状态置为SUCCEEDED，再把描述符换成新值；
+ * 任何线程遇到别人的描述符都会帮它完成，所以没有线程会阻塞等待另一个线程
+ * 读到的Stock已经被别人改过时MCAS失败，重新读取后重试
+ */
+public class LockFreeInventory {
+
+    private enum Status {
+        UNDECIDED, SUCCEEDED, FAILED
+    }
+
+    private static final class Stock {
+        final int remaining;
+
+        Stock(int remaining) {
+            this.remaining = remaining;
+        }
+    }
+
+    private static final class Descriptor {
+        final int[] indexes;
+        final Stock[] expected;
+        final Stock[] updated;
+        final AtomicReference<Status> status = new AtomicReference<>(Status.UNDECIDED);
+
+        Descriptor(int[] indexes, Stock[] expected, Stock[] updated) {
+            this.indexes = indexes;
+            this.expected = expected;
+            this.updated = updated;
+        }
+    }
+
+    // 每个槽位是Stock或者正在进行的Descriptor
+    private final AtomicReferenceArray<Object> slots;
+
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder outOfStock = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    public LockFreeInventory(int itemCount, int initialStock) {
+        slots = new AtomicReferenceArray<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            slots.set(i, new Stock(initialStock));
+        }
+    }
+
+    public int itemCount() {
+        return slots.length();
+    }
+
+    /**
+     * 商品当前库存，遇到未完成的描述符时按描述符状态取值，不需要帮助
+     */
+    public int remaining(int item) {
+        Object value = slots.get(item);
+        if (value instanceof Descriptor) {
+            Descriptor descriptor = (Descriptor) value;
+            int i = Arrays.binarySearch(descriptor.indexes, item);
+            return (descriptor.status.get() == Status.SUCCEEDED ? descriptor.updated[i] : descriptor.expected[i]).remaining;
+        }
+        return ((Stock) value).remaining;
+    }
+
+    public long totalRemaining() {
+        long total = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            total += remaining(i);
+        }
+        return total;
+    }
+
+    /**
+     * 订单中每件商品扣减一个库存，同一件商品出现多次就扣多个
+     * @return 是否下单成功，某件商品库存不足时返回false，库存不变
+     */
+    public boolean order(int... items) {
+        int[] sorted = items.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        int[] quantities = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            if (count > 0 && sorted[count - 1] == sorted[i]) {
+                quantities[count - 1]++;
+            } else {
+                sorted[count] = sorted[i];
+                quantities[count++] = 1;
+            }
+        }
+        int[] indexes = Arrays.copyOf(sorted, count);
+        while (true) {
+            Stock[] expected = new Stock[count];
+            Stock[] updated = new Stock[count];
+            for (int i = 0; i < count; i++) {
+                expected[i] = read(indexes[i]);
+                if (expected[i].remaining < quantities[i]) {
+                    outOfStock.increment();
+                    return false;
+                }
+                updated[i] = new Stock(expected[i].remaining - quantities[i]);
+            }
+            if (mcas(new Descriptor(indexes, expected, updated))) {
+                successes.increment();
+                return true;
+            }
+            retries.increment();
+        }
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("successes", successes.sum());
+        stats.put("outOfStock", outOfStock.sum());
+        stats.put("retries", retries.sum());
+        return stats;
+    }
+
+    private Stock read(int index) {
+        while (true) {
+            Object value = slots.get(index);
+            if (value instanceof Descriptor) {
+                help((Descriptor) value);
+            } else {
+                return (Stock) value;
+            }
+        }
+    }
+
+    private boolean mcas(Descriptor descriptor) {
+        help(descriptor);
+        return descriptor.status.get() == Status.SUCCEEDED;
+    }
+
+    /**
+     * 发起者和遇到描述符的线程都执行同样的步骤，哪个线程先完成都一样
+     * 所有描述符都按下标升序占位，互相帮助不会形成环
+     */
+    private void help(Descriptor descriptor) {
+        Status decision = Status.SUCCEEDED;
+        install:
+        for (int i = 0; i < descriptor.indexes.length && descriptor.status.get() == Status.UNDECIDED; i++) {
+            int index = descriptor.indexes[i];
+            while (true) {
+                Object current = slots.get(index);
+                if (current == descriptor) {
+                    break;
+                }
+                if (current instanceof Descriptor) {
+                    help((Descriptor) current);
+                    continue;
+                }
+                if (current != descriptor.expected[i]) {
+                    decision = Status.FAILED;
+                    break install;
+                }
+                if (slots.compareAndSet(index, current, descriptor)) {
+                    break;
+                }
+            }
+        }
+        descriptor.status.compareAndSet(Status.UNDECIDED, decision);
+        boolean succeeded = descriptor.status.get() == Status.SUCCEEDED;
+        for (int i = 0; i < descriptor.indexes.length; i++) {
+            slots.compareAndSet(descriptor.indexes[i], descriptor, succeeded ? descriptor.updated[i] : descriptor.expected[i]);
+        }
+    }
+}
@@ -1,13 +1,24 @@
 package com.snowball.training.concurrent.demo.question4;
 
+import com.snowball.training.concurrent.demo.question3.ConcurrentAppendList;
+import com.snowball.training.concurrent.demo.question5.DynamicThreadPoolRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
 import java.util.stream.IntStream;
 
 @RestController
@@ -16,6 +27,19 @@ import java.util.stream.IntStream;
 public class LockGranularityController {
 
     private List<Integer> data = new ArrayList<>();
+    private List<Integer> appendData = new ConcurrentAppendList<>();
+    // 慢操作在application.properties中声明的iostage线程池执行，线程池和流水线都在请求之间复用
+    private final StagedPipeline<Integer> pipeline;
+
+    public LockGranularityController(DynamicThreadPoolRegistry registry) {
+        pipeline = new StagedPipeline<>("q4-staged", registry.get("iostage"), 256,
+                batch -> LockProfiler.runSynchronized(data, "q4.granularity.data", () -> data.addAll(batch)));
+    }
+
+    @PreDestroy
+    public void close() {
+        pipeline.close();
+    }
 
     private void slow() {
         try {
@@ -28,10 +52,10 @@ public class LockGranularityController {
     public int wrong() {
         long begin = System.currentTimeMillis();
         IntStream.rangeClosed(1, 1000).parallel().forEach(i -> {
-            synchronized (this) {
+            LockProfiler.runSynchronized(this, "q4.granularity.this", () -> {
                 slow();
                 data.add(i);
-            }
+            });
         });
         log.info("took:{}", System.currentTimeMillis() - begin);
         return data.size();
@@ -42,12 +66,109 @@ public class LockGranularityController {
         long begin = System.currentTimeMillis();
         IntStream.rangeClosed(1, 1000).parallel().forEach(i -> {
             slow();
-            synchronized (data) {
-                data.add(i);
-            }
+            LockProfiler.runSynchronized(data, "q4.granularity.data", () -> data.add(i));
         });
         log.info("took:{}", System.currentTimeMillis() - begin);
         return data.size();
     }
 
+    @GetMapping("fast3")
+    public int fast() {
+        long begin = System.currentTimeMillis();
+        IntStream.rangeClosed(1, 1000).parallel().forEach(i -> {
+            slow();
+            // 追加只需要原子自增占下标、写完后推进发布位置，不需要锁
+            appendData.add(i);
+        });
+        log.info("took:{}", System.currentTimeMillis() - begin);
+        return appendData.size();
+    }
+
+    @GetMapping("staged3")
+    public int staged() throws Exception {
+        long begin = System.currentTimeMillis();
+        // 慢操作在独立的IO线程池执行，不占用commonPool；追加由唯一的消费线程批量完成，每批只加一次锁
+        StagedPipeline<Integer>.Run run = pipeline.start(1000);
+        IntStream.rangeClosed(1, 1000).forEach(i -> run.submit(() -> {
+            slow();
+            return i;
+        }));
+        run.completion().get(1, TimeUnit.MINUTES);
+        log.info("took:{}", System.currentTimeMillis() - begin);
+        return data.size();
+    }
+
+    /**
+     * 依次运行各个模式，同时每隔5ms往commonPool提交一个空任务，任务从提交到开始执行的延迟反映了commonPool被占用的程度
+     * wrong3要串行执行1000次slow，耗时10秒以上，默认不参与对比
+     */
+    @GetMapping("staged3/compare")
+    public Map<String, Map<String, Object>> compareStaged(@RequestParam(value = "modes", defaultValue = "right3,staged3") List<String> modes) throws Exception {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        for (String mode : modes) {
+            IntSupplier run;
+            switch (mode) {
+                case "wrong3":
+                    run = this::wrong;
+                    break;
+                case "right3":
+                    run = this::right;
+                    break;
+                case "staged3":
+                    run = () -> {
+                        try {
+                            return staged();
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    };
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown mode: " + mode);
+            }
+            result.put(mode, probeCommonPool(run));
+        }
+        return result;
+    }
+
+    private Map<String, Object> probeCommonPool(IntSupplier run) throws InterruptedException {
+        LongAdder probes = new LongAdder();
+        LongAdder totalDelayNanos = new LongAdder();
+        LongAccumulator maxDelayNanos = new LongAccumulator(Long::max, 0);
+        Thread prober = new Thread(() -> {
+            List<CompletableFuture<Void>> pending = new ArrayList<>();
+            while (!Thread.currentThread().isInterrupted()) {
+                long submitted = System.nanoTime();
+                pending.add(CompletableFuture.runAsync(() -> {
+                    long delay = System.nanoTime() - submitted;
+                    probes.increment();
+                    totalDelayNanos.add(delay);
+                    maxDelayNanos.accumulate(delay);
+                }, ForkJoinPool.commonPool()));
+                try {
+                    TimeUnit.MILLISECONDS.sleep(5);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            // 等已提交的探测任务执行完，否则被饿死的探测不会计入延迟
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+        }, "common-pool-prober");
+        prober.start();
+        long begin = System.currentTimeMillis();
+        int size = run.getAsInt();
+        long took = System.currentTimeMillis() - begin;
+        prober.interrupt();
+        prober.join();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tookMs", took);
+        stats.put("size", size);
+        stats.put("probes", probes.sum());
+        stats.put("avgProbeDelayMicros", probes.sum() == 0 ? 0 : totalDelayNanos.sum() / probes.sum() / 1000);
+        stats.put("maxProbeDelayMicros", maxDelayNanos.get() / 1000);
+        stats.put("commonPoolParallelism", ForkJoinPool.getCommonPoolParallelism());
+        return stats;
+    }
+
 }
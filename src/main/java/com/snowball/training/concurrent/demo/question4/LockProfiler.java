@@ -0,0 +1,128 @@
+package com.snowball.training.concurrent.demo.question4;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 锁的等待时间和持有时间统计，按锁名称记录到Micrometer的lock.wait和lock.hold两个Timer(带直方图)
+ * 每sampleRate次加锁只统计一次，没抽中的加锁只多一次随机数判断
+ * ReentrantLock用MonitoredLock，synchronized代码块用runSynchronized/callSynchronized
+ * Timer默认注册到Metrics.globalRegistry，Spring环境下由LockProfilerEndpoint换成容器里的MeterRegistry
+ */
+public final class LockProfiler {
+
+    private static final ConcurrentHashMap<String, Timer> WAIT_TIMERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Timer> HOLD_TIMERS = new ConcurrentHashMap<>();
+
+    private static volatile int sampleRate = 100;
+    private static volatile MeterRegistry registry = Metrics.globalRegistry;
+
+    private LockProfiler() {
+    }
+
+    /**
+     * @param rate 每多少次加锁统计一次，1表示每次都统计，0表示关闭
+     */
+    public static void setSampleRate(int rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("sample rate must not be negative");
+        }
+        sampleRate = rate;
+    }
+
+    public static int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * 之后创建的Timer注册到registry，已经在旧registry上创建的Timer会被丢弃，下次加锁时重新创建
+     */
+    public static void setRegistry(MeterRegistry meterRegistry) {
+        registry = Objects.requireNonNull(meterRegistry);
+        WAIT_TIMERS.clear();
+        HOLD_TIMERS.clear();
+    }
+
+    static boolean sampled() {
+        int rate = sampleRate;
+        return rate == 1 || rate > 1 && ThreadLocalRandom.current().nextInt(rate) == 0;
+    }
+
+    static void recordWait(String name, long nanos) {
+        WAIT_TIMERS.computeIfAbsent(name, n -> timer("lock.wait", n, "time spent waiting to acquire the lock"))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    static void recordHold(String name, long nanos) {
+        HOLD_TIMERS.computeIfAbsent(name, n -> timer("lock.hold", n, "time the lock was held"))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    static ConcurrentHashMap<String, Timer> waitTimers() {
+        return WAIT_TIMERS;
+    }
+
+    static ConcurrentHashMap<String, Timer> holdTimers() {
+        return HOLD_TIMERS;
+    }
+
+    private static Timer timer(String metric, String name, String description) {
+        return Timer.builder(metric)
+                .description(description)
+                .tag("lock", name)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.99)
+                .minimumExpectedValue(Duration.ofNanos(1000))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+    }
+
+    /**
+     * 等价于synchronized (monitor) { action.run(); }，抽中时记录进入同步块的等待时间和持有时间
+     */
+    public static void runSynchronized(Object monitor, String name, Runnable action) {
+        // 没抽中时直接执行，不再包装成Supplier，快路径上不额外分配对象
+        if (!sampled()) {
+            synchronized (monitor) {
+                action.run();
+            }
+            return;
+        }
+        long begin = System.nanoTime();
+        synchronized (monitor) {
+            long acquired = System.nanoTime();
+            try {
+                action.run();
+            } finally {
+                recordWait(name, acquired - begin);
+                recordHold(name, System.nanoTime() - acquired);
+            }
+        }
+    }
+
+    public static <T> T callSynchronized(Object monitor, String name, Supplier<T> action) {
+        if (!sampled()) {
+            synchronized (monitor) {
+                return action.get();
+            }
+        }
+        long begin = System.nanoTime();
+        synchronized (monitor) {
+            long acquired = System.nanoTime();
+            try {
+                return action.get();
+            } finally {
+                recordWait(name, acquired - begin);
+                recordHold(name, System.nanoTime() - acquired);
+            }
+        }
+    }
+}
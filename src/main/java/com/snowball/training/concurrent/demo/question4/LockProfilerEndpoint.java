@@ -0,0 +1,158 @@
+package com.snowball.training.concurrent.demo.question4;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * /actuator/lockprofiler
+ * 汇总LockProfiler记录的各个锁的等待/持有时间，并在后台定时用ThreadMXBean检测死锁，发现死锁时打印并保留环上每个线程的等待关系
+ * 指标：lock.wait、lock.hold(按lock标签区分)，lock.deadlocked.threads(当前死锁线程数)，lock.deadlocks.detected(检测到新死锁的次数)
+ */
+@Slf4j
+@Component
+@Endpoint(id = "lockprofiler")
+public class LockProfilerEndpoint {
+
+    @Value("${demo.lock.sample-rate:100}")
+    private int sampleRate;
+    @Value("${demo.lock.deadlock-check-seconds:5}")
+    private int deadlockCheckSeconds;
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final AtomicInteger deadlockedThreads = new AtomicInteger();
+    private final Counter deadlocksDetected;
+    private volatile List<String> lastCycle = Collections.emptyList();
+    private volatile long lastDetectedAt;
+    private ScheduledExecutorService detector;
+
+    public LockProfilerEndpoint(MeterRegistry registry) {
+        LockProfiler.setRegistry(registry);
+        Gauge.builder("lock.deadlocked.threads", deadlockedThreads, AtomicInteger::get)
+                .description("threads currently in a deadlock cycle")
+                .register(registry);
+        deadlocksDetected = Counter.builder("lock.deadlocks.detected")
+                .description("times a new deadlock was detected")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        LockProfiler.setSampleRate(sampleRate);
+        if (deadlockCheckSeconds <= 0) {
+            return;
+        }
+        detector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "deadlock-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        detector.scheduleWithFixedDelay(this::detect, deadlockCheckSeconds, deadlockCheckSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (detector != null) {
+            detector.shutdownNow();
+        }
+    }
+
+    void detect() {
+        try {
+            long[] ids = threadMXBean.findDeadlockedThreads();
+            if (ids == null) {
+                deadlockedThreads.set(0);
+                return;
+            }
+            int previous = deadlockedThreads.getAndSet(ids.length);
+            List<String> cycle = describe(threadMXBean.getThreadInfo(ids, true, true));
+            if (previous != ids.length || !cycle.equals(lastCycle)) {
+                deadlocksDetected.increment();
+                log.warn("deadlock detected:\n{}", String.join("\n", cycle));
+            }
+            lastCycle = cycle;
+            lastDetectedAt = System.currentTimeMillis();
+        } catch (RuntimeException e) {
+            log.warn("deadlock detection failed", e);
+        }
+    }
+
+    private static List<String> describe(ThreadInfo[] infos) {
+        List<String> cycle = new ArrayList<>();
+        for (ThreadInfo info : infos) {
+            if (info == null) {
+                continue;
+            }
+            LockInfo waiting = info.getLockInfo();
+            StringBuilder line = new StringBuilder()
+                    .append('"').append(info.getThreadName()).append("\" ")
+                    .append(info.getThreadState())
+                    .append(" waiting for ").append(waiting)
+                    .append(" held by \"").append(info.getLockOwnerName()).append('"');
+            // 栈顶是park/wait，跳过JDK自身的帧，显示业务代码中加锁的位置
+            for (StackTraceElement element : info.getStackTrace()) {
+                String className = element.getClassName();
+                if (!className.startsWith("java.") && !className.startsWith("sun.")
+                        && !className.equals(MonitoredLock.class.getName())) {
+                    line.append(" at ").append(element);
+                    break;
+                }
+            }
+            cycle.add(line.toString());
+        }
+        return cycle;
+    }
+
+    @ReadOperation
+    public Map<String, Object> profile() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sampleRate", LockProfiler.getSampleRate());
+        Map<String, Object> locks = new TreeMap<>();
+        LockProfiler.waitTimers().forEach((name, timer) -> {
+            Map<String, Object> lock = new LinkedHashMap<>();
+            lock.put("wait", summary(timer));
+            Timer hold = LockProfiler.holdTimers().get(name);
+            if (hold != null) {
+                lock.put("hold", summary(hold));
+            }
+            locks.put(name, lock);
+        });
+        result.put("locks", locks);
+        result.put("deadlockedThreads", deadlockedThreads.get());
+        result.put("lastDeadlockAt", lastDetectedAt == 0 ? null : new Date(lastDetectedAt));
+        result.put("lastDeadlockCycle", lastCycle);
+        return result;
+    }
+
+    private static Map<String, Object> summary(Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("sampledCount", snapshot.count());
+        summary.put("meanMicros", snapshot.mean(TimeUnit.MICROSECONDS));
+        summary.put("maxMicros", snapshot.max(TimeUnit.MICROSECONDS));
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            summary.put("p" + Math.round(percentile.percentile() * 100) + "Micros", percentile.value(TimeUnit.MICROSECONDS));
+        }
+        return summary;
+    }
+}
@@ -1,11 +1,20 @@
 package com.snowball.training.concurrent.demo.question4;
 
+import com.snowball.training.concurrent.demo.question4.counter.CounterRunner;
+import com.snowball.training.concurrent.demo.question4.counter.CounterStrategy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 @RestController
@@ -27,6 +36,29 @@ public class LockScopeController {
         return Data.getCounter();
     }
 
+    /**
+     * 用right的负载对比不同计数器实现，strategy为all时跑所有实现，否则是逗号分隔的CounterStrategy名称
+     * 每种实现按threads中的每个线程数各跑一次
+     */
+    @GetMapping("counter")
+    public List<CounterRunner.Result> counter(@RequestParam(value = "strategy", defaultValue = "all") String strategy,
+                                              @RequestParam(value = "threads", defaultValue = "1,2,4,8") int[] threads,
+                                              @RequestParam(value = "count", defaultValue = "1000000") int count) throws InterruptedException {
+        List<CounterStrategy> strategies = "all".equalsIgnoreCase(strategy)
+                ? Arrays.asList(CounterStrategy.values())
+                : Arrays.stream(strategy.split(",")).map(s -> CounterStrategy.valueOf(s.trim().toUpperCase())).collect(Collectors.toList());
+        CounterRunner runner = new CounterRunner();
+        List<CounterRunner.Result> results = new ArrayList<>();
+        for (CounterStrategy counterStrategy : strategies) {
+            for (int threadCount : threads) {
+                CounterRunner.Result result = runner.run(counterStrategy, threadCount, count);
+                log.info("{}", result);
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
     @GetMapping("wrong2")
     public String wrong2() {
         Interesting interesting = new Interesting();
@@ -42,4 +74,58 @@ public class LockScopeController {
         new Thread(() -> interesting.compareRight()).start();
         return "OK";
     }
+
+    /**
+     * 写者和读者同时运行，对比读者拿同一把锁(right2)和用顺序锁不加锁读取两种方式下读者的吞吐和写者被拖慢的程度
+     */
+    @GetMapping("right2-fast")
+    public Map<String, Object> right2Fast() throws InterruptedException {
+        int count = Interesting.count();
+        Interesting alone = new Interesting();
+        long writerAlone = timed(alone::add);
+        long fastWriterAlone = timed(alone::addFast);
+
+        Interesting synced = new Interesting();
+        long[] synchronizedNanos = runTogether(synced::add, synced::compareRight);
+        Interesting seq = new Interesting();
+        long[] retries = new long[1];
+        long[] seqLockNanos = runTogether(seq::addFast, () -> retries[0] = seq.compareFast());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("synchronized", pairStats(count, writerAlone, synchronizedNanos));
+        Map<String, Object> seqLock = pairStats(count, fastWriterAlone, seqLockNanos);
+        seqLock.put("readerRetries", retries[0]);
+        result.put("seqLock", seqLock);
+        return result;
+    }
+
+    private static long timed(Runnable action) {
+        long begin = System.nanoTime();
+        action.run();
+        return System.nanoTime() - begin;
+    }
+
+    /**
+     * @return 写者和读者各自的耗时
+     */
+    private static long[] runTogether(Runnable writer, Runnable reader) throws InterruptedException {
+        long[] nanos = new long[2];
+        Thread writerThread = new Thread(() -> nanos[0] = timed(writer));
+        Thread readerThread = new Thread(() -> nanos[1] = timed(reader));
+        writerThread.start();
+        readerThread.start();
+        writerThread.join();
+        readerThread.join();
+        return nanos;
+    }
+
+    private static Map<String, Object> pairStats(int count, long writerAloneNanos, long[] nanos) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("writerAloneMs", TimeUnit.NANOSECONDS.toMillis(writerAloneNanos));
+        stats.put("writerMs", TimeUnit.NANOSECONDS.toMillis(nanos[0]));
+        stats.put("writerSlowdown", (double) nanos[0] / Math.max(writerAloneNanos, 1));
+        stats.put("readerMs", TimeUnit.NANOSECONDS.toMillis(nanos[1]));
+        stats.put("readsPerSecond", (long) (count * 1e9 / Math.max(nanos[1], 1)));
+        return stats;
+    }
 }
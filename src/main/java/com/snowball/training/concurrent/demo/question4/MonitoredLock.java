@@ -0,0 +1,103 @@
+package com.snowball.training.concurrent.demo.question4;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 带统计的ReentrantLock，可以直接替换原来的ReentrantLock
+ * 只统计最外层的加锁，重入不计；抽中的加锁记录等待时间，释放时记录持有时间
+ */
+public class MonitoredLock extends ReentrantLock {
+
+    private final String name;
+    // 只由持有锁的线程读写，锁本身保证了可见性
+    private long acquiredAt;
+    private boolean sampled;
+
+    public MonitoredLock(String name) {
+        this(name, false);
+    }
+
+    public MonitoredLock(String name, boolean fair) {
+        super(fair);
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void lock() {
+        if (!LockProfiler.sampled()) {
+            super.lock();
+            acquired(false, 0);
+            return;
+        }
+        long begin = System.nanoTime();
+        super.lock();
+        acquired(true, begin);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (!LockProfiler.sampled()) {
+            super.lockInterruptibly();
+            acquired(false, 0);
+            return;
+        }
+        long begin = System.nanoTime();
+        super.lockInterruptibly();
+        acquired(true, begin);
+    }
+
+    @Override
+    public boolean tryLock() {
+        if (!super.tryLock()) {
+            return false;
+        }
+        boolean sample = LockProfiler.sampled();
+        acquired(sample, sample ? System.nanoTime() : 0);
+        return true;
+    }
+
+    @Override
+    public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!LockProfiler.sampled()) {
+            if (!super.tryLock(timeout, unit)) {
+                return false;
+            }
+            acquired(false, 0);
+            return true;
+        }
+        long begin = System.nanoTime();
+        boolean locked = super.tryLock(timeout, unit);
+        if (!locked) {
+            // 超时也是等待，同样计入等待时间
+            LockProfiler.recordWait(name, System.nanoTime() - begin);
+            return false;
+        }
+        acquired(true, begin);
+        return true;
+    }
+
+    private void acquired(boolean sample, long begin) {
+        if (getHoldCount() != 1) {
+            return;
+        }
+        sampled = sample;
+        if (sample) {
+            acquiredAt = System.nanoTime();
+            LockProfiler.recordWait(name, acquiredAt - begin);
+        }
+    }
+
+    @Override
+    public void unlock() {
+        if (sampled && isHeldByCurrentThread() && getHoldCount() == 1) {
+            sampled = false;
+            LockProfiler.recordHold(name, System.nanoTime() - acquiredAt);
+        }
+        super.unlock();
+    }
+}
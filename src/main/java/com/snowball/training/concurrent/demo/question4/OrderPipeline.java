@@ -0,0 +1,239 @@
+package com.snowball.training.concurrent.demo.question4;
+
+import com.snowball.training.concurrent.demo.common.Sequence;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单写者的下单流水线
+ * 库存只由一个工作线程读写，请求线程把订单放进预先分配好的环形缓冲区后拿到一个Future，下单路径上没有锁
+ * 工作线程每次取出所有已发布的订单，逐个扣减后一次性推进消费序号，再统一完成这一批的Future(组提交)
+ * 生产者用CAS在cursor上申请序号，写完槽位后在available里标记本轮已发布；缓冲区满时生产者自旋等待，形成背压
+ * cursor和consumed用填充过的Sequence，避免生产者和消费者频繁写的两个序号落在同一个缓存行
+ * 商品编号越界的订单在submit时直接以IllegalArgumentException结束，不进入缓冲区；
+ * 工作线程处理单个订单出错时只让这个订单的Future异常结束，线程继续处理后面的订单
+ * close前应当先停止提交
+ */
+public class OrderPipeline implements AutoCloseable {
+
+    private static final class Slot {
+        int[] items;
+        CompletableFuture<Boolean> future;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final int shift;
+    // 每个槽位最近一次发布时的轮次，消费者据此判断槽位是否已经写好
+    private final AtomicIntegerArray available;
+    // 生产者已申请到的最大序号
+    private final Sequence cursor = new Sequence();
+    // 消费者已处理完的最大序号
+    private final Sequence consumed = new Sequence();
+
+    // 以下字段只由工作线程访问
+    private final int[] remaining;
+    private final boolean[] results;
+    private final RuntimeException[] errors;
+    private final CompletableFuture<Boolean>[] futures;
+
+    private final Thread worker;
+    private volatile boolean running = true;
+    private volatile long totalRemaining;
+    private volatile long appliedOrders;
+    private volatile long batches;
+
+    /**
+     * @param bufferSize 环形缓冲区大小，会向上取整到2的幂
+     */
+    @SuppressWarnings("unchecked")
+    public OrderPipeline(int itemCount, int initialStock, int bufferSize) {
+        int size = Integer.highestOneBit(Math.max(bufferSize, 2));
+        if (size < bufferSize) {
+            size <<= 1;
+        }
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+        shift = Integer.numberOfTrailingZeros(size);
+        available = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            available.set(i, -1);
+        }
+        remaining = new int[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            remaining[i] = initialStock;
+        }
+        totalRemaining = (long) initialStock * itemCount;
+        results = new boolean[size];
+        errors = new RuntimeException[size];
+        futures = new CompletableFuture[size];
+        worker = new Thread(this::run, "order-pipeline");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 提交一个订单，每件商品扣减一个库存
+     * @return 订单被处理后完成，库存不足时结果为false，商品编号不合法时异常结束
+     */
+    public CompletableFuture<Boolean> submit(int... items) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        String invalid = validate(items);
+        if (invalid != null) {
+            future.completeExceptionally(new IllegalArgumentException(invalid));
+            return future;
+        }
+        long sequence;
+        while (true) {
+            if (!running) {
+                future.completeExceptionally(new IllegalStateException("pipeline closed"));
+                return future;
+            }
+            long current = cursor.get();
+            long next = current + 1;
+            if (next - slots.length > consumed.get()) {
+                // 缓冲区已满，等消费者处理
+                Thread.yield();
+                continue;
+            }
+            if (cursor.compareAndSet(current, next)) {
+                sequence = next;
+                break;
+            }
+        }
+        int index = (int) sequence & mask;
+        Slot slot = slots[index];
+        slot.items = items;
+        slot.future = future;
+        available.lazySet(index, (int) (sequence >>> shift));
+        return future;
+    }
+
+    private String validate(int[] items) {
+        if (items == null) {
+            return "items must not be null";
+        }
+        for (int item : items) {
+            if (item < 0 || item >= remaining.length) {
+                return "item " + item + " out of range [0, " + remaining.length + ")";
+            }
+        }
+        return null;
+    }
+
+    public long totalRemaining() {
+        return totalRemaining;
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("orders", appliedOrders);
+        stats.put("batches", batches);
+        stats.put("totalRemaining", totalRemaining);
+        return stats;
+    }
+
+    private boolean isAvailable(long sequence) {
+        return available.get((int) sequence & mask) == (int) (sequence >>> shift);
+    }
+
+    private void run() {
+        long next = consumed.get() + 1;
+        int idle = 0;
+        while (running || next <= cursor.get()) {
+            long limit = cursor.get();
+            long hi = next;
+            while (hi <= limit && isAvailable(hi)) {
+                hi++;
+            }
+            if (hi == next) {
+                idle = idle(idle);
+                continue;
+            }
+            idle = 0;
+            int count = (int) (hi - next);
+            long total = totalRemaining;
+            for (int i = 0; i < count; i++) {
+                Slot slot = slots[(int) (next + i) & mask];
+                try {
+                    results[i] = apply(slot.items);
+                    if (results[i]) {
+                        total -= slot.items.length;
+                    }
+                } catch (RuntimeException e) {
+                    // 提交后调用方又改了数组等情况，只让这个订单失败，工作线程不能退出
+                    errors[i] = e;
+                }
+                futures[i] = slot.future;
+                slot.items = null;
+                slot.future = null;
+            }
+            // 先发布这一批的结果、释放槽位，再完成Future
+            totalRemaining = total;
+            appliedOrders += count;
+            batches++;
+            consumed.lazySet(hi - 1);
+            for (int i = 0; i < count; i++) {
+                if (errors[i] != null) {
+                    futures[i].completeExceptionally(errors[i]);
+                    errors[i] = null;
+                } else {
+                    futures[i].complete(results[i]);
+                }
+                futures[i] = null;
+            }
+            next = hi;
+        }
+    }
+
+    private boolean apply(int[] items) {
+        int i = 0;
+        try {
+            for (; i < items.length; i++) {
+                if (remaining[items[i]] <= 0) {
+                    rollback(items, i);
+                    return false;
+                }
+                remaining[items[i]]--;
+            }
+        } catch (RuntimeException e) {
+            rollback(items, i);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * 回滚前count件已经扣减的商品
+     */
+    private void rollback(int[] items, int count) {
+        for (int j = 0; j < count; j++) {
+            remaining[items[j]]++;
+        }
+    }
+
+    private int idle(int idle) {
+        if (idle < 100) {
+            // 刚处理完一批时很可能马上有新订单，先自旋
+        } else if (idle < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+        return idle + 1;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(worker);
+        worker.join();
+    }
+}
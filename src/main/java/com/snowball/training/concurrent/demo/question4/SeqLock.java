@@ -0,0 +1,37 @@
+package com.snowball.training.concurrent.demo.question4;
+
+/**
+ * 顺序锁，用于一组字段的一致性读取，读不加锁也不会阻塞写
+ * 写之前序号加1变成奇数，写完再加1变回偶数；读之前记下偶数序号，读完序号没变说明期间没有写入，否则重读
+ * 写者之间需要自己互斥(例如都在synchronized方法里)，被保护的字段必须是volatile的，保证读取不会被重排到序号检查之外
+ */
+public class SeqLock {
+
+    private volatile long sequence;
+
+    public void beginWrite() {
+        sequence++;
+    }
+
+    public void endWrite() {
+        sequence++;
+    }
+
+    /**
+     * @return 开始读取时的序号，有写入正在进行时自旋等它结束
+     */
+    public long beginRead() {
+        long stamp;
+        while (((stamp = sequence) & 1) != 0) {
+            Thread.yield();
+        }
+        return stamp;
+    }
+
+    /**
+     * @return beginRead之后有没有发生过写入，false时读到的值可能不一致，需要重读
+     */
+    public boolean validate(long stamp) {
+        return sequence == stamp;
+    }
+}
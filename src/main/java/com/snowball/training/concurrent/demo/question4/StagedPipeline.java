@@ -0,0 +1,158 @@
+package com.snowball.training.concurrent.demo.question4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 两段式流水线：慢操作在外部传入的IO线程池里执行，结果放进无锁队列，由唯一的消费线程批量交给sink
+ * 慢操作不占用ForkJoinPool.commonPool，sink只在消费线程里调用，每批只需要同步一次
+ * 流水线和IO线程池都是长期复用的，每次请求用start开始一轮，这一轮的结果全部交给sink后Run.completion()完成
+ * 多轮可以同时进行，同一批里可能混有不同轮的结果；close时还没完成的轮次以异常结束
+ */
+public class StagedPipeline<T> implements AutoCloseable {
+
+    private static final class Result<T> {
+        final StagedPipeline<T>.Run run;
+        final T value;
+
+        Result(StagedPipeline<T>.Run run, T value) {
+            this.run = run;
+            this.value = value;
+        }
+    }
+
+    private final Executor ioStage;
+    // 多个IO线程写、一个消费线程读
+    private final ConcurrentLinkedQueue<Result<T>> results = new ConcurrentLinkedQueue<>();
+    private final Set<Run> active = ConcurrentHashMap.newKeySet();
+    private final Consumer<List<T>> sink;
+    private final int maxBatch;
+    private final Thread consumer;
+    private volatile boolean closed;
+
+    public StagedPipeline(String name, Executor ioStage, int maxBatch, Consumer<List<T>> sink) {
+        this.ioStage = ioStage;
+        this.maxBatch = maxBatch;
+        this.sink = sink;
+        this.consumer = new Thread(this::consume, name + "-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * 开始一轮，这一轮一共会提交expected个任务
+     */
+    public Run start(int expected) {
+        if (closed) {
+            throw new IllegalStateException("pipeline closed");
+        }
+        Run run = new Run(expected);
+        if (expected == 0) {
+            run.completion.complete(null);
+        } else {
+            active.add(run);
+            // 和close并发时，close可能在add之前已经遍历完active，这里再检查一次
+            if (closed) {
+                run.fail(new CancellationException("pipeline closed"));
+            }
+        }
+        return run;
+    }
+
+    private void consume() {
+        List<Result<T>> batch = new ArrayList<>(maxBatch);
+        List<T> values = new ArrayList<>(maxBatch);
+        while (!closed) {
+            Result<T> result;
+            while (batch.size() < maxBatch && (result = results.poll()) != null) {
+                batch.add(result);
+            }
+            if (batch.isEmpty()) {
+                // 生产者放入结果后会unpark，超时只是兜底
+                LockSupport.parkNanos(1_000_000);
+                continue;
+            }
+            for (Result<T> r : batch) {
+                values.add(r.value);
+            }
+            try {
+                sink.accept(values);
+                for (Result<T> r : batch) {
+                    r.run.delivered();
+                }
+            } catch (Throwable e) {
+                // 消费线程退出后所有轮次都不会完成，sink抛出Error也只让这一批失败
+                for (Result<T> r : batch) {
+                    r.run.fail(e);
+                }
+            }
+            batch = new ArrayList<>(maxBatch);
+            values = new ArrayList<>(maxBatch);
+        }
+    }
+
+    /**
+     * 停止消费线程，IO线程池由调用方管理
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+        for (Run run : active) {
+            run.fail(new CancellationException("pipeline closed before all results were delivered"));
+        }
+    }
+
+    public final class Run {
+        private final int expected;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        // 只由消费线程修改
+        private int delivered;
+
+        private Run(int expected) {
+            this.expected = expected;
+        }
+
+        public void submit(Supplier<T> work) {
+            if (closed) {
+                fail(new CancellationException("pipeline closed"));
+                return;
+            }
+            try {
+                ioStage.execute(() -> {
+                    try {
+                        results.offer(new Result<>(this, work.get()));
+                        LockSupport.unpark(consumer);
+                    } catch (Throwable e) {
+                        // Error或者偷偷抛出的受检异常也要结束这一轮，否则等待completion的调用方一直等到超时
+                        fail(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                fail(e);
+                throw e;
+            }
+        }
+
+        public CompletableFuture<Void> completion() {
+            return completion;
+        }
+
+        private void delivered() {
+            if (++delivered == expected) {
+                active.remove(this);
+                completion.complete(null);
+            }
+        }
+
+        private void fail(Throwable e) {
+            active.remove(this);
+            completion.completeExceptionally(e);
+        }
+    }
+}
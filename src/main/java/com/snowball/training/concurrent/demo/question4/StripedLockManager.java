@@ -0,0 +1,137 @@
+package com.snowball.training.concurrent.demo.question4;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按id分段的锁管理器
+ * 每个id映射到固定数量的锁之一，一次要锁多个id时先换算成锁下标、去重、按下标从小到大加锁，
+ * 所有线程加锁顺序一致所以不会死锁，也就不需要tryLock超时；锁的数量固定，和商品数量无关
+ * 不同id可能落在同一把锁上，只会多一点竞争，不影响正确性
+ * 记录每次加锁的等待时间，没有竞争时tryLock直接成功不计时
+ */
+public class StripedLockManager {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contendedAcquisitions = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Long::max, 0);
+
+    /**
+     * @param stripes 锁的数量，会向上取整到2的幂
+     */
+    public StripedLockManager(int stripes) {
+        if (stripes <= 0 || stripes > (1 << 30)) {
+            throw new IllegalArgumentException("stripes must be in (0, 2^30]");
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    public int stripeCount() {
+        return locks.length;
+    }
+
+    public int stripeOf(long id) {
+        // 打散连续的id，避免相邻商品总是落在相邻的锁上
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * 锁住所有id对应的锁，返回的Guard关闭时释放，配合try-with-resources使用
+     */
+    public Guard lockAll(long... ids) {
+        int[] stripes = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            stripes[i] = stripeOf(ids[i]);
+        }
+        Arrays.sort(stripes);
+        int count = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            if (i == 0 || stripes[i] != stripes[i - 1]) {
+                stripes[count++] = stripes[i];
+            }
+        }
+        int locked = 0;
+        try {
+            for (; locked < count; locked++) {
+                acquire(locks[stripes[locked]]);
+            }
+        } catch (RuntimeException | Error e) {
+            unlock(stripes, locked);
+            throw e;
+        }
+        return new Guard(stripes, count);
+    }
+
+    private void acquire(ReentrantLock lock) {
+        acquisitions.increment();
+        if (lock.tryLock()) {
+            return;
+        }
+        long begin = System.nanoTime();
+        lock.lock();
+        long waited = System.nanoTime() - begin;
+        contendedAcquisitions.increment();
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulate(waited);
+    }
+
+    private void unlock(int[] stripes, int count) {
+        // 按加锁的相反顺序释放
+        for (int i = count - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("stripes", (long) locks.length);
+        stats.put("acquisitions", acquisitions.sum());
+        stats.put("contendedAcquisitions", contendedAcquisitions.sum());
+        stats.put("totalWaitNanos", totalWaitNanos.sum());
+        stats.put("maxWaitNanos", maxWaitNanos.get());
+        return stats;
+    }
+
+    public void resetStats() {
+        acquisitions.reset();
+        contendedAcquisitions.reset();
+        totalWaitNanos.reset();
+        maxWaitNanos.reset();
+    }
+
+    public final class Guard implements AutoCloseable {
+        private final int[] stripes;
+        private final int count;
+        private boolean closed;
+
+        private Guard(int[] stripes, int count) {
+            this.stripes = stripes;
+            this.count = count;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                unlock(stripes, count);
+            }
+        }
+    }
+}
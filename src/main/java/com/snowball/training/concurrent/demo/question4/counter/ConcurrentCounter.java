@@ -0,0 +1,14 @@
+package com.snowball.training.concurrent.demo.question4.counter;
+
+/**
+ * 并发计数器，各种实现由CounterStrategy创建
+ */
+public interface ConcurrentCounter {
+
+    void increment();
+
+    /**
+     * 当前计数，是否是精确的时间点快照取决于实现
+     */
+    long sum();
+}
@@ -0,0 +1,83 @@
+package com.snowball.training.concurrent.demo.question4.counter;
+
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * 用和/q4/right一样的负载(并行流里累加count次)测量某种计数器在指定线程数下的吞吐
+ * 每SAMPLE_RATE次累加单独计时一次，按2的幂分桶统计延迟，p50/p99取所在桶的上界
+ */
+public class CounterRunner {
+
+    private static final int SAMPLE_RATE = 64;
+    private static final int BUCKETS = 40;
+
+    public Result run(CounterStrategy strategy, int threads, int count) throws InterruptedException {
+        ConcurrentCounter counter = strategy.create();
+        AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(threads);
+        long begin = System.nanoTime();
+        forkJoinPool.execute(() -> IntStream.range(0, count).parallel().forEach(i -> {
+            if (ThreadLocalRandom.current().nextInt(SAMPLE_RATE) != 0) {
+                counter.increment();
+                return;
+            }
+            long start = System.nanoTime();
+            counter.increment();
+            long took = System.nanoTime() - start;
+            histogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(took)));
+        }));
+        forkJoinPool.shutdown();
+        forkJoinPool.awaitTermination(1, TimeUnit.HOURS);
+        long took = System.nanoTime() - begin;
+
+        Result result = new Result();
+        result.setStrategy(strategy);
+        result.setThreads(threads);
+        result.setSum(counter.sum());
+        result.setCorrect(result.getSum() == count);
+        result.setOpsPerSecond((long) (count * 1e9 / Math.max(took, 1)));
+        long samples = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            samples += histogram.get(i);
+        }
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucket = histogram.get(i);
+            if (bucket == 0) {
+                continue;
+            }
+            long upperBound = 1L << i;
+            buckets.put("<" + upperBound + "ns", bucket);
+            if (seen < samples * 0.5 && seen + bucket >= samples * 0.5) {
+                result.setP50Nanos(upperBound);
+            }
+            if (seen < samples * 0.99 && seen + bucket >= samples * 0.99) {
+                result.setP99Nanos(upperBound);
+            }
+            seen += bucket;
+        }
+        result.setLatencyHistogram(buckets);
+        return result;
+    }
+
+    @Data
+    public static class Result {
+        private CounterStrategy strategy;
+        private int threads;
+        private long sum;
+        private boolean correct;
+        private long opsPerSecond;
+        private long p50Nanos;
+        private long p99Nanos;
+        private Map<String, Long> latencyHistogram;
+    }
+}
@@ -0,0 +1,155 @@
+package com.snowball.training.concurrent.demo.question4.counter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * 可选的计数器实现
+ */
+public enum CounterStrategy {
+
+    // 和Data.right()一样用synchronized
+    MONITOR(MonitorCounter::new),
+    REENTRANT_LOCK(() -> new LockCounter(false)),
+    FAIR_REENTRANT_LOCK(() -> new LockCounter(true)),
+    STAMPED_LOCK(StampedLockCounter::new),
+    ATOMIC_LONG(AtomicLongCounter::new),
+    LONG_ADDER(LongAdderCounter::new),
+    // Java 8没有VarHandle，用等价的AtomicLongFieldUpdater.getAndAdd
+    FIELD_UPDATER(FieldUpdaterCounter::new),
+    SHARDED(ShardedCounter::new);
+
+    private final Supplier<ConcurrentCounter> factory;
+
+    CounterStrategy(Supplier<ConcurrentCounter> factory) {
+        this.factory = factory;
+    }
+
+    public ConcurrentCounter create() {
+        return factory.get();
+    }
+
+    private static class MonitorCounter implements ConcurrentCounter {
+        private long value;
+
+        @Override
+        public synchronized void increment() {
+            value++;
+        }
+
+        @Override
+        public synchronized long sum() {
+            return value;
+        }
+    }
+
+    private static class LockCounter implements ConcurrentCounter {
+        private final ReentrantLock lock;
+        private long value;
+
+        LockCounter(boolean fair) {
+            lock = new ReentrantLock(fair);
+        }
+
+        @Override
+        public void increment() {
+            lock.lock();
+            try {
+                value++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public long sum() {
+            lock.lock();
+            try {
+                return value;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static class StampedLockCounter implements ConcurrentCounter {
+        private final StampedLock lock = new StampedLock();
+        private long value;
+
+        @Override
+        public void increment() {
+            long stamp = lock.writeLock();
+            try {
+                value++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        @Override
+        public long sum() {
+            long stamp = lock.tryOptimisticRead();
+            long current = value;
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    current = value;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return current;
+        }
+    }
+
+    private static class AtomicLongCounter implements ConcurrentCounter {
+        private final AtomicLong value = new AtomicLong();
+
+        @Override
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        @Override
+        public long sum() {
+            return value.get();
+        }
+    }
+
+    /**
+     * 写入没有竞争，但sum()不是时间点快照
+     */
+    private static class LongAdderCounter implements ConcurrentCounter {
+        private final LongAdder value = new LongAdder();
+
+        @Override
+        public void increment() {
+            value.increment();
+        }
+
+        @Override
+        public long sum() {
+            return value.sum();
+        }
+    }
+
+    private static class FieldUpdaterCounter implements ConcurrentCounter {
+        private static final AtomicLongFieldUpdater<FieldUpdaterCounter> VALUE =
+                AtomicLongFieldUpdater.newUpdater(FieldUpdaterCounter.class, "value");
+        private volatile long value;
+
+        @Override
+        public void increment() {
+            VALUE.getAndAdd(this, 1);
+        }
+
+        @Override
+        public long sum() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.snowball.training.concurrent.demo.question4.counter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分片计数器，分片数是CPU核数的两倍向上取整到2的幂，每个线程固定累加到按线程id散列的分片上
+ * 分片之间间隔128字节，不同分片不在同一个缓存行，也避开相邻缓存行预取
+ * 读取时两次遍历所有分片，两次结果完全一致说明期间没有写入，这个和就是某一时刻的精确值(计数只增不减，不会有ABA)
+ * 写入太频繁一直对不上时，把epoch置为奇数让新的写入先等待，只剩已经开始的写入，几次遍历之后一定能对上，读完再放开
+ * 写入平时只多读一次几乎不变的epoch
+ */
+public class ShardedCounter implements ConcurrentCounter {
+
+    private static final int STRIDE = 16;
+    private static final int OPTIMISTIC_ATTEMPTS = 4;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+    // 偶数表示正常写入，奇数表示有读取正在等待精确结果
+    private volatile int epoch;
+    private final Object readLock = new Object();
+
+    public ShardedCounter() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public ShardedCounter(int shards) {
+        int size = Integer.highestOneBit(Math.max(shards, 1));
+        if (size < shards) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        cells = new AtomicLongArray(size * STRIDE);
+    }
+
+    @Override
+    public void increment() {
+        while ((epoch & 1) != 0) {
+            Thread.yield();
+        }
+        long id = Thread.currentThread().getId();
+        int shard = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        cells.getAndIncrement(shard * STRIDE);
+    }
+
+    @Override
+    public long sum() {
+        synchronized (readLock) {
+            long[] previous = collect(null);
+            for (int i = 0; i < OPTIMISTIC_ATTEMPTS; i++) {
+                long[] current = collect(previous);
+                if (current == previous) {
+                    return total(current);
+                }
+                previous = current;
+            }
+            epoch++;
+            try {
+                while (true) {
+                    long[] current = collect(previous);
+                    if (current == previous) {
+                        return total(current);
+                    }
+                    previous = current;
+                }
+            } finally {
+                epoch++;
+            }
+        }
+    }
+
+    /**
+     * 读取所有分片，和previous完全一致时返回previous本身
+     */
+    private long[] collect(long[] previous) {
+        long[] values = new long[mask + 1];
+        boolean same = previous != null;
+        for (int i = 0; i <= mask; i++) {
+            values[i] = cells.get(i * STRIDE);
+            same &= previous != null && values[i] == previous[i];
+        }
+        return same ? previous : values;
+    }
+
+    private static long total(long[] values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,175 @@
+package com.snowball.training.concurrent.demo.question5;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 根据任务延迟自动调整允许同时执行的任务数的限流器，放在线程池前面，超过限制的请求立即拒绝而不是进入队列排队
+ * AIMD：延迟不超过timeout时，每次成功且并发已用到一半以上就把限制加1；延迟超时或任务被丢弃时乘以backoffRatio
+ * GRADIENT：类似TCP Vegas/Netflix Gradient，每windowSize个样本算一次平均延迟(短期)，和长期的延迟均值比较：
+ * gradient = 长期/短期，限制在[0.5, 1]，新的限制 = 当前限制 * gradient + sqrt(当前限制)，再做一次平滑
+ * 没有排队时短期延迟接近长期，限制按sqrt(limit)慢慢增长；开始排队后短期延迟变大，gradient小于1，限制回落
+ * 两种算法都只在实际并发用到限制的一半以上时才增长，避免请求少的时候限制无限上涨
+ * 调整只在任务完成时进行，用synchronized保护，代价是每个任务一次短暂的加锁
+ */
+public class ConcurrencyLimiter {
+
+    public enum Algorithm {
+        AIMD, GRADIENT
+    }
+
+    private final Algorithm algorithm;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long timeoutNanos;
+    private final double backoffRatio = 0.9;
+    private final int windowSize = 20;
+    private final double smoothing = 0.2;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile int limit;
+
+    // 以下字段只在synchronized里访问
+    private double estimatedLimit;
+    private double longRttNanos;
+    private long windowRttSum;
+    private int windowCount;
+    private int windowMaxInFlight;
+
+    /**
+     * @param timeout 只有AIMD使用，延迟超过它就认为过载
+     */
+    public ConcurrencyLimiter(Algorithm algorithm, int initialLimit, int minLimit, int maxLimit, long timeout, TimeUnit unit) {
+        if (minLimit <= 0 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("require 0 < minLimit <= initialLimit <= maxLimit");
+        }
+        this.algorithm = algorithm;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return 没有超过限制时返回一个Permit，任务结束后必须调用onSuccess或onDropped；超过限制返回null
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                accepted.increment();
+                return new Permit(current + 1);
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("algorithm", algorithm);
+        stats.put("limit", limit);
+        stats.put("inFlight", inFlight.get());
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+
+    private synchronized void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        if (algorithm == Algorithm.AIMD) {
+            aimd(rttNanos, inFlightAtStart, dropped);
+        } else {
+            gradient(rttNanos, inFlightAtStart, dropped);
+        }
+        limit = (int) Math.max(minLimit, Math.min(maxLimit, Math.round(estimatedLimit)));
+    }
+
+    private void aimd(long rttNanos, int inFlightAtStart, boolean dropped) {
+        if (dropped || rttNanos > timeoutNanos) {
+            estimatedLimit = Math.max(minLimit, estimatedLimit * backoffRatio);
+        } else if (inFlightAtStart * 2 >= limit) {
+            // 并发没用到一半时说明不是限制在起作用，不用再放大
+            estimatedLimit += 1;
+        }
+    }
+
+    private void gradient(long rttNanos, int inFlightAtStart, boolean dropped) {
+        if (dropped) {
+            estimatedLimit = Math.max(minLimit, estimatedLimit * backoffRatio);
+            return;
+        }
+        windowRttSum += rttNanos;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlightAtStart);
+        if (++windowCount < windowSize) {
+            return;
+        }
+        double shortRtt = (double) windowRttSum / windowCount;
+        int maxInFlight = windowMaxInFlight;
+        windowRttSum = 0;
+        windowCount = 0;
+        windowMaxInFlight = 0;
+        if (longRttNanos == 0) {
+            longRttNanos = shortRtt;
+        } else {
+            longRttNanos = longRttNanos * 0.95 + shortRtt * 0.05;
+        }
+        // 负载下降后长期均值比短期大很多，加速衰减，否则gradient长时间停在1，限制一直上涨
+        if (longRttNanos > 2 * shortRtt) {
+            longRttNanos *= 0.9;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, longRttNanos / shortRtt));
+        // 和AIMD一样，并发没用到一半时不增长，只允许按gradient回落
+        double queueSize = maxInFlight * 2 >= estimatedLimit ? Math.sqrt(estimatedLimit) : 0;
+        double newLimit = estimatedLimit * gradient + queueSize;
+        estimatedLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+    }
+
+    public final class Permit {
+        private final int inFlightAtStart;
+        private final long startNanos = System.nanoTime();
+        private boolean released;
+
+        private Permit(int inFlightAtStart) {
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * 任务正常完成，耗时作为一个延迟样本
+         */
+        public void onSuccess() {
+            release(false);
+        }
+
+        /**
+         * 任务被下游拒绝或超时放弃，直接按过载处理
+         */
+        public void onDropped() {
+            release(true);
+        }
+
+        private void release(boolean dropped) {
+            if (released) {
+                return;
+            }
+            released = true;
+            inFlight.decrementAndGet();
+            onSample(System.nanoTime() - startNanos, inFlightAtStart, dropped);
+        }
+    }
+}
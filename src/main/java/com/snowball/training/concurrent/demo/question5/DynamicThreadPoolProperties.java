@@ -0,0 +1,62 @@
+package com.snowball.training.concurrent.demo.question5;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 在配置中声明的线程池，例如：
+ * demo.executors.pools.asynccalc.core-pool-size=200
+ * demo.executors.pools.asynccalc.queue-capacity=1000
+ * 这里只是启动时的初始值，运行时通过/actuator/executors调整
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "demo.executors")
+public class DynamicThreadPoolProperties {
+
+    private Map<String, Pool> pools = new LinkedHashMap<>();
+
+    @Data
+    public static class Pool {
+        private int corePoolSize = 1;
+        private int maxPoolSize = 1;
+        private long keepAliveSeconds = 60;
+        private int queueCapacity = 100;
+        private RejectionPolicy rejectionPolicy = RejectionPolicy.ABORT;
+    }
+
+    public enum RejectionPolicy {
+        ABORT {
+            @Override
+            RejectedExecutionHandler handler() {
+                return new ThreadPoolExecutor.AbortPolicy();
+            }
+        },
+        CALLER_RUNS {
+            @Override
+            RejectedExecutionHandler handler() {
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+            }
+        },
+        DISCARD {
+            @Override
+            RejectedExecutionHandler handler() {
+                return new ThreadPoolExecutor.DiscardPolicy();
+            }
+        },
+        DISCARD_OLDEST {
+            @Override
+            RejectedExecutionHandler handler() {
+                return new ThreadPoolExecutor.DiscardOldestPolicy();
+            }
+        };
+
+        abstract RejectedExecutionHandler handler();
+    }
+}
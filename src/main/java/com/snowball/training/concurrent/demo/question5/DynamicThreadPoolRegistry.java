@@ -0,0 +1,135 @@
+package com.snowball.training.concurrent.demo.question5;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jodd.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按名称管理在配置中声明的线程池，线程池在整个应用中复用，不要每次调用都新建
+ * 核心线程数、最大线程数、空闲存活时间、拒绝策略和队列容量都可以在运行时调整，调整不会重建线程池，已排队的任务不受影响
+ */
+@Slf4j
+@Component
+public class DynamicThreadPoolRegistry {
+
+    private static final class Entry {
+        final InstrumentedThreadPoolExecutor executor;
+        final ResizableBlockingQueue<Runnable> queue;
+        volatile DynamicThreadPoolProperties.RejectionPolicy rejectionPolicy;
+
+        Entry(InstrumentedThreadPoolExecutor executor, ResizableBlockingQueue<Runnable> queue, DynamicThreadPoolProperties.RejectionPolicy rejectionPolicy) {
+            this.executor = executor;
+            this.queue = queue;
+            this.rejectionPolicy = rejectionPolicy;
+        }
+    }
+
+    private final Map<String, Entry> pools = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolSampler sampler;
+
+    public DynamicThreadPoolRegistry(DynamicThreadPoolProperties properties, MeterRegistry meterRegistry, ThreadPoolSampler sampler) {
+        this.meterRegistry = meterRegistry;
+        this.sampler = sampler;
+        properties.getPools().forEach(this::register);
+    }
+
+    private void register(String name, DynamicThreadPoolProperties.Pool config) {
+        validate(config.getCorePoolSize(), config.getMaxPoolSize(), config.getKeepAliveSeconds(), config.getQueueCapacity());
+        ResizableBlockingQueue<Runnable> queue = new ResizableBlockingQueue<>(config.getQueueCapacity());
+        InstrumentedThreadPoolExecutor executor = new InstrumentedThreadPoolExecutor(
+                name, meterRegistry,
+                config.getCorePoolSize(), config.getMaxPoolSize(),
+                config.getKeepAliveSeconds(), TimeUnit.SECONDS,
+                queue,
+                new ThreadFactoryBuilder().setNameFormat(name + "-threadpool-%d").get(),
+                config.getRejectionPolicy().handler());
+        pools.put(name, new Entry(executor, queue, config.getRejectionPolicy()));
+        sampler.register(name, executor, false);
+        log.info("registered thread pool {}: {}", name, config);
+    }
+
+    private static void validate(int corePoolSize, int maxPoolSize, long keepAliveSeconds, int queueCapacity) {
+        if (corePoolSize < 0 || maxPoolSize <= 0 || maxPoolSize < corePoolSize || keepAliveSeconds < 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException(String.format("invalid thread pool config: core=%d max=%d keepAlive=%d queue=%d",
+                    corePoolSize, maxPoolSize, keepAliveSeconds, queueCapacity));
+        }
+    }
+
+    public InstrumentedThreadPoolExecutor get(String name) {
+        return entry(name).executor;
+    }
+
+    private Entry entry(String name) {
+        Entry entry = pools.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("thread pool not configured: " + name);
+        }
+        return entry;
+    }
+
+    public Set<String> names() {
+        return new TreeSet<>(pools.keySet());
+    }
+
+    /**
+     * 为null的参数保持不变
+     * 调大时先改最大线程数再改核心线程数，调小时反过来，任何时刻都满足core<=max，否则ThreadPoolExecutor会抛异常
+     */
+    public synchronized Map<String, Object> update(String name, Integer corePoolSize, Integer maxPoolSize, Long keepAliveSeconds,
+                                                   Integer queueCapacity, DynamicThreadPoolProperties.RejectionPolicy rejectionPolicy) {
+        Entry entry = entry(name);
+        InstrumentedThreadPoolExecutor executor = entry.executor;
+        int core = corePoolSize != null ? corePoolSize : executor.getCorePoolSize();
+        int max = maxPoolSize != null ? maxPoolSize : executor.getMaximumPoolSize();
+        long keepAlive = keepAliveSeconds != null ? keepAliveSeconds : executor.getKeepAliveTime(TimeUnit.SECONDS);
+        int capacity = queueCapacity != null ? queueCapacity : entry.queue.getCapacity();
+        validate(core, max, keepAlive, capacity);
+
+        if (max >= executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(max);
+            executor.setCorePoolSize(core);
+        } else {
+            executor.setCorePoolSize(core);
+            executor.setMaximumPoolSize(max);
+        }
+        executor.setKeepAliveTime(keepAlive, TimeUnit.SECONDS);
+        entry.queue.setCapacity(capacity);
+        if (rejectionPolicy != null && rejectionPolicy != entry.rejectionPolicy) {
+            executor.setRejectedExecutionHandler(rejectionPolicy.handler());
+            entry.rejectionPolicy = rejectionPolicy;
+        }
+        log.info("updated thread pool {}: core={} max={} keepAlive={}s queue={} policy={}",
+                name, core, max, keepAlive, capacity, entry.rejectionPolicy);
+        return describe(name);
+    }
+
+    public Map<String, Object> describe(String name) {
+        Entry entry = entry(name);
+        InstrumentedThreadPoolExecutor executor = entry.executor;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("corePoolSize", executor.getCorePoolSize());
+        stats.put("maxPoolSize", executor.getMaximumPoolSize());
+        stats.put("keepAliveSeconds", executor.getKeepAliveTime(TimeUnit.SECONDS));
+        stats.put("queueCapacity", entry.queue.getCapacity());
+        stats.put("rejectionPolicy", entry.rejectionPolicy);
+        stats.put("poolSize", executor.getPoolSize());
+        stats.put("activeCount", executor.getActiveCount());
+        stats.put("largestPoolSize", executor.getLargestPoolSize());
+        stats.put("queueSize", entry.queue.size());
+        stats.put("completedTaskCount", executor.getCompletedTaskCount());
+        stats.putAll(executor.stats());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pools.values().forEach(entry -> entry.executor.shutdown());
+    }
+}
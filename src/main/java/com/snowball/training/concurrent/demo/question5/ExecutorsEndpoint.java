@@ -0,0 +1,51 @@
+package com.snowball.training.concurrent.demo.question5;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * /actuator/executors 查看所有线程池的配置和运行状态
+ * /actuator/executors/{name} 查看单个线程池，POST同一路径调整参数，例如：
+ * curl -X POST -H 'Content-Type: application/json' -d '{"corePoolSize":4,"maxPoolSize":8,"queueCapacity":500}' localhost:8080/actuator/executors/asynccalc
+ */
+@Component
+@Endpoint(id = "executors")
+public class ExecutorsEndpoint {
+
+    private final DynamicThreadPoolRegistry registry;
+
+    public ExecutorsEndpoint(DynamicThreadPoolRegistry registry) {
+        this.registry = registry;
+    }
+
+    @ReadOperation
+    public Map<String, Object> executors() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (String name : registry.names()) {
+            result.put(name, registry.describe(name));
+        }
+        return result;
+    }
+
+    @ReadOperation
+    public Map<String, Object> executor(@Selector String name) {
+        return registry.describe(name);
+    }
+
+    @WriteOperation
+    public Map<String, Object> update(@Selector String name,
+                                      @Nullable Integer corePoolSize,
+                                      @Nullable Integer maxPoolSize,
+                                      @Nullable Long keepAliveSeconds,
+                                      @Nullable Integer queueCapacity,
+                                      @Nullable DynamicThreadPoolProperties.RejectionPolicy rejectionPolicy) {
+        return registry.update(name, corePoolSize, maxPoolSize, keepAliveSeconds, queueCapacity, rejectionPolicy);
+    }
+}
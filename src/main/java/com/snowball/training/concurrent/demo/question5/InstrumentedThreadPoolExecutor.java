@@ -0,0 +1,181 @@
+package com.snowball.training.concurrent.demo.question5;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 记录每个任务排队和执行耗时的线程池
+ * execute时给任务打上提交时间戳，开始执行时记录排队时间，执行完记录执行时间，能区分延迟是花在排队上还是花在任务本身
+ * 指标(按pool标签区分)：executor.queue.wait、executor.execution(带p50/p99和直方图)，
+ * executor.rejected(被拒绝的任务数，包括由调用线程执行的)，executor.caller.runs(由调用线程执行的任务数)
+ * 活跃线程的峰值由ThreadPoolSampler定期取走并清零，反映的是采样间隔内的最大并发
+ * 线程池终止时注销自己的指标，按请求新建的线程池用完要shutdown，否则指标和线程池一样一直留着
+ * 注意任务被包装过，remove(Runnable)找不到原来的任务，队列中的任务可以用unwrap取出原来的任务
+ */
+public class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor {
+
+    private final String name;
+    private final MeterRegistry registry;
+    private final List<Meter> meters;
+    private final Timer queueWait;
+    private final Timer execution;
+    private final Counter rejected;
+    private final Counter callerRuns;
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger peakRunning = new AtomicInteger();
+
+    public InstrumentedThreadPoolExecutor(String name, MeterRegistry registry,
+                                          int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                          BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory,
+                                          RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, new AbortPolicy());
+        this.name = name;
+        this.registry = registry;
+        this.queueWait = timer(registry, "executor.queue.wait", "time tasks spent in the queue");
+        this.execution = timer(registry, "executor.execution", "time tasks spent running");
+        this.rejected = Counter.builder("executor.rejected")
+                .tag("pool", name)
+                .description("tasks rejected by the pool, including those run by the caller")
+                .register(registry);
+        this.callerRuns = Counter.builder("executor.caller.runs")
+                .tag("pool", name)
+                .description("rejected tasks run by the submitting thread")
+                .register(registry);
+        this.meters = Arrays.asList(queueWait, execution, rejected, callerRuns);
+        setRejectedExecutionHandler(handler);
+    }
+
+    private Timer timer(MeterRegistry registry, String metric, String description) {
+        return Timer.builder(metric)
+                .tag("pool", name)
+                .description(description)
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        super.execute(new TimedTask(command, System.nanoTime()));
+    }
+
+    @Override
+    protected void terminated() {
+        super.terminated();
+        meters.forEach(registry::remove);
+    }
+
+    /**
+     * 包装拒绝策略，计数后交给原来的策略处理
+     */
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        super.setRejectedExecutionHandler(new CountingRejectedExecutionHandler(handler));
+    }
+
+    @Override
+    public RejectedExecutionHandler getRejectedExecutionHandler() {
+        RejectedExecutionHandler handler = super.getRejectedExecutionHandler();
+        return handler instanceof CountingRejectedExecutionHandler ? ((CountingRejectedExecutionHandler) handler).delegate : handler;
+    }
+
+    /**
+     * 队列里放的是包装后的任务，TaskWeigher等需要看原始任务时先解开
+     */
+    public static Runnable unwrap(Runnable task) {
+        return task instanceof TimedTask ? ((TimedTask) task).task : task;
+    }
+
+    /**
+     * 取走上次调用以来的活跃线程峰值，并从当前活跃数重新开始统计
+     */
+    public int takePeakActive() {
+        return peakRunning.getAndSet(running.get());
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queueWait", summary(queueWait));
+        stats.put("execution", summary(execution));
+        stats.put("rejected", (long) rejected.count());
+        stats.put("callerRuns", (long) callerRuns.count());
+        return stats;
+    }
+
+    private static Map<String, Object> summary(Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", snapshot.count());
+        summary.put("meanMicros", snapshot.mean(TimeUnit.MICROSECONDS));
+        summary.put("maxMicros", snapshot.max(TimeUnit.MICROSECONDS));
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            summary.put("p" + Math.round(percentile.percentile() * 100) + "Micros", percentile.value(TimeUnit.MICROSECONDS));
+        }
+        return summary;
+    }
+
+    private final class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long submittedAt;
+
+        TimedTask(Runnable task, long submittedAt) {
+            this.task = task;
+            this.submittedAt = submittedAt;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            queueWait.record(start - submittedAt, TimeUnit.NANOSECONDS);
+            int now = running.incrementAndGet();
+            peakRunning.accumulateAndGet(now, Math::max);
+            try {
+                task.run();
+            } finally {
+                running.decrementAndGet();
+                execution.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+    }
+
+    private final class CountingRejectedExecutionHandler implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler delegate;
+
+        CountingRejectedExecutionHandler(RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejected.increment();
+            // CallerRunsPolicy在线程池已关闭时会直接丢弃任务
+            if (delegate instanceof CallerRunsPolicy && !executor.isShutdown()) {
+                callerRuns.increment();
+            }
+            delegate.rejectedExecution(r, executor);
+        }
+    }
+}
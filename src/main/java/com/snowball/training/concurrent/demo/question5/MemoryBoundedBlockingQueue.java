@@ -0,0 +1,343 @@
+package com.snowball.training.concurrent.demo.question5;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按估算的字节数而不是任务个数限制长度的阻塞队列，任务大小差别很大时个数上限起不到保护内存的作用
+ * 每个任务入队时用TaskWeigher估算一次大小，出队时扣回；队列空时总是接受，避免单个超过上限的任务永远进不来
+ * ThreadPoolExecutor提交任务时调用的是offer(E)，所以达到上限后的准入策略作用在offer(E)上：
+ * BLOCK：一直等到有空间，生产者被限速；TIMEOUT：最多等timeout，超时返回false交给线程池的拒绝策略；
+ * SHED：直接返回false。put和offer(E, timeout, unit)仍然按各自的语义等待
+ * 注意BLOCK时offer永远不会返回false，线程池不会创建超过核心线程数的线程
+ */
+public class MemoryBoundedBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    public enum AdmissionPolicy {
+        BLOCK, TIMEOUT, SHED
+    }
+
+    private static final class Node<E> {
+        final E item;
+        final long bytes;
+
+        Node(E item, long bytes) {
+            this.item = item;
+            this.bytes = bytes;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Node<E>> nodes = new ArrayDeque<>();
+    private final TaskWeigher<? super E> weigher;
+    private final long maxBytes;
+    private final AdmissionPolicy policy;
+    private final long timeoutNanos;
+
+    private volatile long currentBytes;
+    private volatile long peakBytes;
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+
+    public MemoryBoundedBlockingQueue(long maxBytes, TaskWeigher<? super E> weigher, AdmissionPolicy policy, long timeout, TimeUnit unit) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.maxBytes = maxBytes;
+        this.weigher = Objects.requireNonNull(weigher);
+        this.policy = Objects.requireNonNull(policy);
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long currentBytes() {
+        return currentBytes;
+    }
+
+    public long peakBytes() {
+        return peakBytes;
+    }
+
+    /**
+     * 因为队列满而等待过的入队次数
+     */
+    public long throttledCount() {
+        return throttled.sum();
+    }
+
+    /**
+     * 没能入队的次数(SHED或TIMEOUT超时)
+     */
+    public long refusedCount() {
+        return refused.sum();
+    }
+
+    private boolean hasRoom(long bytes) {
+        return nodes.isEmpty() || currentBytes + bytes <= maxBytes;
+    }
+
+    private void enqueue(E e, long bytes) {
+        nodes.addLast(new Node<>(e, bytes));
+        long current = currentBytes + bytes;
+        currentBytes = current;
+        if (current > peakBytes) {
+            peakBytes = current;
+        }
+        notEmpty.signal();
+    }
+
+    private E dequeue() {
+        Node<E> node = nodes.pollFirst();
+        currentBytes -= node.bytes;
+        // 不同任务大小不同，腾出的空间可能够好几个等待者用
+        notFull.signalAll();
+        return node.item;
+    }
+
+    /**
+     * @param nanos 最多等待的时间，小于0表示一直等
+     */
+    private boolean insert(E e, long nanos) throws InterruptedException {
+        Objects.requireNonNull(e);
+        long bytes = Math.max(0, weigher.weigh(e));
+        lock.lockInterruptibly();
+        try {
+            if (!hasRoom(bytes)) {
+                if (nanos == 0) {
+                    refused.increment();
+                    return false;
+                }
+                throttled.increment();
+                while (!hasRoom(bytes)) {
+                    if (nanos < 0) {
+                        notFull.await();
+                    } else if (nanos == 0) {
+                        refused.increment();
+                        return false;
+                    } else {
+                        nanos = Math.max(0, notFull.awaitNanos(nanos));
+                    }
+                }
+            }
+            enqueue(e, bytes);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(E e) {
+        try {
+            switch (policy) {
+                case BLOCK:
+                    return insert(e, -1);
+                case TIMEOUT:
+                    return insert(e, timeoutNanos);
+                default:
+                    return insert(e, 0);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            refused.increment();
+            return false;
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        return insert(e, Math.max(0, unit.toNanos(timeout)));
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        insert(e, -1);
+    }
+
+    @Override
+    public E poll() {
+        lock.lock();
+        try {
+            return nodes.isEmpty() ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (nodes.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (nodes.isEmpty()) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E peek() {
+        lock.lock();
+        try {
+            Node<E> node = nodes.peekFirst();
+            return node == null ? null : node.item;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按字节限制时没有准确的剩余个数，只返回是否还能再放一个
+     */
+    @Override
+    public int remainingCapacity() {
+        return currentBytes < maxBytes ? Integer.MAX_VALUE : 0;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            for (Iterator<Node<E>> it = nodes.iterator(); it.hasNext(); ) {
+                Node<E> node = it.next();
+                if (o.equals(node.item)) {
+                    it.remove();
+                    currentBytes -= node.bytes;
+                    notFull.signalAll();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            nodes.clear();
+            currentBytes = 0;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        Objects.requireNonNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        lock.lock();
+        try {
+            int n = 0;
+            while (n < maxElements && !nodes.isEmpty()) {
+                c.add(dequeue());
+                n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        lock.lock();
+        try {
+            Object[] result = new Object[nodes.size()];
+            int i = 0;
+            for (Node<E> node : nodes) {
+                result[i++] = node.item;
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 遍历的是调用时的快照，迭代器的remove会从队列中删除对应元素
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        Object[] snapshot = toArray();
+        return new Iterator<E>() {
+            private int next;
+            private E last;
+
+            @Override
+            public boolean hasNext() {
+                return next < snapshot.length;
+            }
+
+            @Override
+            public E next() {
+                if (next >= snapshot.length) {
+                    throw new NoSuchElementException();
+                }
+                last = (E) snapshot[next++];
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                MemoryBoundedBlockingQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+}
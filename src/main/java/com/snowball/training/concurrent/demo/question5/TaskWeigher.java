@@ -0,0 +1,18 @@
+package com.snowball.training.concurrent.demo.question5;
+
+/**
+ * 估算排队中的任务占用的内存(字节)，MemoryBoundedBlockingQueue用它代替任务个数来限制队列
+ * 估算只需要数量级正确，应当足够便宜，入队时在锁外调用一次
+ */
+@FunctionalInterface
+public interface TaskWeigher<E> {
+
+    long weigh(E task);
+
+    /**
+     * 每个任务都按相同大小计算，这时字节上限等价于任务个数上限
+     */
+    static <E> TaskWeigher<E> fixed(long bytes) {
+        return task -> bytes;
+    }
+}
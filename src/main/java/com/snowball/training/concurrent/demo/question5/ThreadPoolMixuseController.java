@@ -1,9 +1,10 @@
 package com.snowball.training.concurrent.demo.question5;
 
-import jodd.util.concurrent.ThreadFactoryBuilder;
+import com.snowball.training.concurrent.demo.common.DataGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.PostConstruct;
@@ -11,10 +12,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.LocalTime;
-import java.util.Collections;
+import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.StandardOpenOption.CREATE;
@@ -25,30 +26,20 @@ import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 @Slf4j
 public class ThreadPoolMixuseController {
 
-    private static ThreadPoolExecutor threadPool = new ThreadPoolExecutor(
-            2, 2,
-            1, TimeUnit.HOURS,
-            new ArrayBlockingQueue<>(100),
-            new ThreadFactoryBuilder().setNameFormat("batchfileprocess-threadpool-%d").get(),
-            new ThreadPoolExecutor.CallerRunsPolicy());
-
-
-    private static ThreadPoolExecutor asyncCalcThreadPool = new ThreadPoolExecutor(
-            200, 200,
-            1, TimeUnit.HOURS,
-            new ArrayBlockingQueue<>(1000),
-            new ThreadFactoryBuilder().setNameFormat("asynccalc-threadpool-%d").get());
-
-    private void printStats(ThreadPoolExecutor threadPool) {
-        Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("monitor-thread-%d").get()).scheduleAtFixedRate(() -> {
-            log.info("=========================");
-            log.info("Pool Size: {}", threadPool.getPoolSize());
-            log.info("Active Threads: {}", threadPool.getActiveCount());
-            log.info("Number of Tasks Completed: {}", threadPool.getCompletedTaskCount());
-            log.info("Number of Tasks in Queue: {}", threadPool.getQueue().size());
-
-            log.info("=========================");
-        }, 0, 1, TimeUnit.SECONDS);
+    // 自适应限流器的并发上限，客户端线程再多也不会有更多请求同时进入线程池
+    private static final int ADAPTIVE_MAX_LIMIT = 1000;
+
+    // 两个线程池在application.properties的demo.executors.pools下声明，可以通过/actuator/executors在运行时调整
+    private final ThreadPoolExecutor threadPool;
+
+    private final ThreadPoolExecutor asyncCalcThreadPool;
+
+    private final ThreadPoolSampler sampler;
+
+    public ThreadPoolMixuseController(DynamicThreadPoolRegistry registry, ThreadPoolSampler sampler) {
+        this.threadPool = registry.get("batchfileprocess");
+        this.asyncCalcThreadPool = registry.get("asynccalc");
+        this.sampler = sampler;
     }
 
     private Callable<Integer> calcTask() {
@@ -68,14 +59,108 @@ public class ThreadPoolMixuseController {
         return asyncCalcThreadPool.submit(calcTask()).get();
     }
 
+    /**
+     * CPU密集版本的calcTask，耗时随并发增加而线性变长，适合的并发数接近CPU核数
+     */
+    private Callable<Integer> cpuCalcTask() {
+        return () -> {
+            double sum = 0;
+            for (int i = 1; i <= 200_000; i++) {
+                sum += Math.sqrt(i);
+            }
+            return sum > 0 ? 1 : 0;
+        };
+    }
+
+    /**
+     * 在asyncCalcThreadPool前面加一个自适应限流器，客户端线程数按1、2、4...翻倍到maxClients，每一档持续stepMillis
+     * 超过限制的请求立即被拒绝，客户端等5ms后重试；每一档结束时记录限流器的限制、吞吐量和延迟的p50/p99
+     * task=sleep是原来的calcTask，task=cpu是CPU密集版本
+     * maxClients必须是正数，超过限流器的上限ADAPTIVE_MAX_LIMIT时按上限处理，避免一次请求创建过多客户端线程
+     */
+    @GetMapping("right2-adaptive")
+    public Map<String, Object> adaptive(@RequestParam(value = "algorithm", defaultValue = "GRADIENT") ConcurrencyLimiter.Algorithm algorithm,
+                                        @RequestParam(value = "task", defaultValue = "sleep") String task,
+                                        @RequestParam(value = "maxClients", defaultValue = "256") int maxClients,
+                                        @RequestParam(value = "stepMillis", defaultValue = "500") long stepMillis,
+                                        @RequestParam(value = "timeoutMs", defaultValue = "30") long timeoutMs) throws InterruptedException {
+        if (maxClients <= 0) {
+            throw new IllegalArgumentException("maxClients must be positive");
+        }
+        maxClients = Math.min(maxClients, ADAPTIVE_MAX_LIMIT);
+        Callable<Integer> calc = "cpu".equals(task) ? cpuCalcTask() : calcTask();
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(algorithm, 10, 1, ADAPTIVE_MAX_LIMIT, timeoutMs, TimeUnit.MILLISECONDS);
+        ExecutorService clients = Executors.newFixedThreadPool(maxClients);
+        List<Map<String, Object>> steps = new ArrayList<>();
+        try {
+            for (int clientCount = 1; clientCount <= maxClients; clientCount *= 2) {
+                steps.add(runStep(limiter, calc, clients, clientCount, stepMillis));
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("algorithm", algorithm);
+        result.put("task", task);
+        result.put("maxClients", maxClients);
+        result.put("convergedLimit", limiter.getLimit());
+        result.put("limiter", limiter.stats());
+        result.put("steps", steps);
+        return result;
+    }
+
+    private Map<String, Object> runStep(ConcurrencyLimiter limiter, Callable<Integer> calc, ExecutorService clients,
+                                        int clientCount, long stepMillis) throws InterruptedException {
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        LongAdder rejected = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(stepMillis);
+        CountDownLatch done = new CountDownLatch(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            clients.execute(() -> {
+                try {
+                    while (System.nanoTime() < deadline) {
+                        ConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+                        if (permit == null) {
+                            rejected.increment();
+                            LockSupport.parkNanos(5_000_000);
+                            continue;
+                        }
+                        long begin = System.nanoTime();
+                        try {
+                            asyncCalcThreadPool.submit(calc).get();
+                            permit.onSuccess();
+                            latencies.add(System.nanoTime() - begin);
+                        } catch (RejectedExecutionException | ExecutionException e) {
+                            permit.onDropped();
+                        } catch (InterruptedException e) {
+                            permit.onDropped();
+                            return;
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        Map<String, Object> step = new LinkedHashMap<>();
+        step.put("clients", clientCount);
+        step.put("limit", limiter.getLimit());
+        step.put("completed", sorted.length);
+        step.put("rejected", rejected.sum());
+        step.put("throughputPerSecond", sorted.length * 1000L / stepMillis);
+        step.put("p50Micros", sorted.length == 0 ? 0 : sorted[(int) (sorted.length * 0.5)] / 1000);
+        step.put("p99Micros", sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1000);
+        return step;
+    }
+
 //    @PostConstruct
     public void init() {
-        printStats(threadPool);
+        sampler.register("batchfileprocess", threadPool, true);
 
         new Thread(() -> {
-            String payload = IntStream.rangeClosed(1, 1_000_000)
-                    .mapToObj(__ -> "a")
-                    .collect(Collectors.joining(""));
+            String payload = DataGenerator.payload(1_000_000, 'a');
             while (true) {
                 threadPool.execute(() -> {
                     try {
@@ -1,18 +1,19 @@
 package com.snowball.training.concurrent.demo.question5;
 
+import com.snowball.training.concurrent.demo.common.DataGenerator;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jodd.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.UUID;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 @RestController
@@ -20,27 +21,30 @@ import java.util.stream.IntStream;
 @Slf4j
 public class ThreadPoolOOMController {
 
-    private void printStats(ThreadPoolExecutor threadPool) {
-        Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(() -> {
-            log.info("=========================");
-            log.info("Pool Size: {}", threadPool.getPoolSize());
-            log.info("Active Threads: {}", threadPool.getActiveCount());
-            log.info("Number of Tasks Completed: {}", threadPool.getCompletedTaskCount());
-            log.info("Number of Tasks in Queue: {}", threadPool.getQueue().size());
+    private final ThreadPoolSampler sampler;
+    private final MeterRegistry meterRegistry;
+    // 每次请求都新建线程池，名称加上序号避免指标混在一起
+    private final AtomicInteger poolId = new AtomicInteger();
 
-            log.info("=========================");
-        }, 0, 1, TimeUnit.SECONDS);
+    public ThreadPoolOOMController(ThreadPoolSampler sampler, MeterRegistry meterRegistry) {
+        this.sampler = sampler;
+        this.meterRegistry = meterRegistry;
+    }
+
+    private void printStats(String name, ThreadPoolExecutor threadPool) {
+        sampler.register(name + "-" + poolId.incrementAndGet(), threadPool, true);
     }
 
     @GetMapping("oom1")
     public void oom1() throws InterruptedException {
         ThreadPoolExecutor threadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(1);
-        printStats(threadPool);
+        printStats("oom1", threadPool);
+        // 每次请求用同一个种子重新生成数据，第i个任务的key只由i决定，和任务执行的顺序无关
+        DataGenerator generator = new DataGenerator();
         for (int i = 0; i < 100000000; i++) {
+            long index = i;
             threadPool.execute(() -> {
-                String payload = IntStream.rangeClosed(1, 1000000)
-                        .mapToObj(__ -> "a")
-                        .collect(Collectors.joining("")) + UUID.randomUUID().toString();
+                String payload = DataGenerator.payload(1000000, 'a') + generator.keyAt(index);
                 try {
                     TimeUnit.HOURS.sleep(1);
                 }
@@ -59,10 +63,12 @@ public class ThreadPoolOOMController {
     public void oom2() throws InterruptedException {
 
         ThreadPoolExecutor threadPool = (ThreadPoolExecutor) Executors.newCachedThreadPool();
-        printStats(threadPool);
+        printStats("oom2", threadPool);
+        DataGenerator generator = new DataGenerator();
         for (int i = 0; i < 100000000; i++) {
+            long index = i;
             threadPool.execute(() -> {
-                String payload = UUID.randomUUID().toString();
+                String payload = generator.keyAt(index);
                 try {
                     TimeUnit.HOURS.sleep(1);
                 } catch (InterruptedException e) {
@@ -74,10 +80,101 @@ public class ThreadPoolOOMController {
         threadPool.awaitTermination(1, TimeUnit.HOURS);
     }
 
+    /**
+     * 和oom1一样只有一个工作线程，但每个任务带着生产者生成的payload，队列按估算的字节数而不是任务个数限制
+     * 达到maxMb后按policy限制生产者：BLOCK等待、TIMEOUT等待timeoutMs后拒绝、SHED直接拒绝，内存占用停在上限附近
+     */
+    @GetMapping("oom1-safe")
+    public Map<String, Object> oom1Safe(@RequestParam(value = "tasks", defaultValue = "500") int tasks,
+                                        @RequestParam(value = "payloadLength", defaultValue = "1000000") int payloadLength,
+                                        @RequestParam(value = "taskMillis", defaultValue = "10") int taskMillis,
+                                        @RequestParam(value = "maxMb", defaultValue = "64") long maxMb,
+                                        @RequestParam(value = "policy", defaultValue = "BLOCK") MemoryBoundedBlockingQueue.AdmissionPolicy policy,
+                                        @RequestParam(value = "timeoutMs", defaultValue = "100") long timeoutMs) throws InterruptedException {
+        String name = "oom1-safe-" + poolId.incrementAndGet();
+        MemoryBoundedBlockingQueue<Runnable> queue = new MemoryBoundedBlockingQueue<>(maxMb << 20,
+                task -> {
+                    Runnable original = InstrumentedThreadPoolExecutor.unwrap(task);
+                    return original instanceof PayloadTask ? ((PayloadTask) original).estimatedBytes() : 64;
+                },
+                policy, timeoutMs, TimeUnit.MILLISECONDS);
+        Gauge bytesGauge = Gauge.builder("executor.queue.bytes", queue, MemoryBoundedBlockingQueue::currentBytes)
+                .tag("pool", name)
+                .description("estimated bytes retained by queued tasks")
+                .register(meterRegistry);
+        InstrumentedThreadPoolExecutor threadPool = new InstrumentedThreadPoolExecutor(
+                name, meterRegistry,
+                1, 1,
+                0, TimeUnit.MILLISECONDS,
+                queue,
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").get(),
+                new ThreadPoolExecutor.AbortPolicy());
+        sampler.register(name, threadPool, true);
+
+        AtomicInteger completed = new AtomicInteger();
+        DataGenerator generator = new DataGenerator();
+        long begin = System.currentTimeMillis();
+        for (int i = 0; i < tasks; i++) {
+            try {
+                threadPool.execute(new PayloadTask(DataGenerator.payload(payloadLength, 'a') + generator.keyAt(i), taskMillis, completed));
+            } catch (RejectedExecutionException ex) {
+                // 被拒绝的次数记录在线程池的executor.rejected指标里
+            }
+        }
+        threadPool.shutdown();
+        threadPool.awaitTermination(1, TimeUnit.HOURS);
+        // 线程池终止时已经注销了自己的计时器和计数器，这里注销队列字节数的Gauge，每次请求不会留下指标
+        meterRegistry.remove(bytesGauge);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("policy", policy);
+        result.put("tookMs", System.currentTimeMillis() - begin);
+        result.put("submitted", tasks);
+        result.put("completed", completed.get());
+        result.put("throttled", queue.throttledCount());
+        // 队列按SHED/TIMEOUT没有接受的次数，这些任务随后交给拒绝策略，所以也包含在下面的rejected里
+        result.put("refusedByQueue", queue.refusedCount());
+        result.put("maxBytes", queue.getMaxBytes());
+        result.put("peakQueueBytes", queue.peakBytes());
+        result.put("usedHeapMb", (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) >> 20);
+        result.putAll(threadPool.stats());
+        return result;
+    }
+
+    private static final class PayloadTask implements Runnable {
+        private final String payload;
+        private final int taskMillis;
+        private final AtomicInteger completed;
+
+        PayloadTask(String payload, int taskMillis, AtomicInteger completed) {
+            this.payload = payload;
+            this.taskMillis = taskMillis;
+            this.completed = completed;
+        }
+
+        long estimatedBytes() {
+            // 任务对象本身加上String和char[]
+            return 32 + 24 + 16 + 2L * payload.length();
+        }
+
+        @Override
+        public void run() {
+            try {
+                TimeUnit.MILLISECONDS.sleep(taskMillis);
+            } catch (InterruptedException e) {
+            }
+            log.debug("{}", payload.length());
+            completed.incrementAndGet();
+        }
+    }
+
     @GetMapping("right")
     public int right() throws InterruptedException {
         AtomicInteger atomicInteger = new AtomicInteger();
-        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(
+        String name = "right-" + poolId.incrementAndGet();
+        // 记录每个任务的排队和执行时间，以及被AbortPolicy拒绝的次数
+        ThreadPoolExecutor threadPool = new InstrumentedThreadPoolExecutor(
+                name, meterRegistry,
                 2, 5,
                 5, TimeUnit.SECONDS,
                 new ArrayBlockingQueue<>(10),
@@ -85,7 +182,7 @@ public class ThreadPoolOOMController {
                 new ThreadPoolExecutor.AbortPolicy());
         threadPool.allowCoreThreadTimeOut(true);
         threadPool.prestartAllCoreThreads();
-        printStats(threadPool);
+        sampler.register(name, threadPool, true);
         IntStream.rangeClosed(1, 20).forEach(i -> {
             try {
                 TimeUnit.SECONDS.sleep(1);
@@ -109,6 +206,8 @@ public class ThreadPoolOOMController {
         });
 
         TimeUnit.SECONDS.sleep(60);
+        // 线程池只在这次请求里用，关闭后终止时会注销指标，采样线程也会移除它
+        threadPool.shutdown();
         return atomicInteger.intValue();
     }
 }
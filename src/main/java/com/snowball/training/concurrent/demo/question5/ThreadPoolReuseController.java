@@ -1,17 +1,16 @@
 package com.snowball.training.concurrent.demo.question5;
 
+import com.snowball.training.concurrent.demo.common.DataGenerator;
 import jodd.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 @RestController
@@ -22,11 +21,11 @@ public class ThreadPoolReuseController {
     @GetMapping("wrong")
     public String wrong() throws InterruptedException {
         ThreadPoolExecutor threadPool = ThreadPoolHelper.getThreadPool();
+        // 每次请求用同一个种子重新生成数据，第i个任务的key只由i决定
+        DataGenerator generator = new DataGenerator();
         IntStream.rangeClosed(1, 10).forEach(i -> {
             threadPool.execute(() -> {
-                String payload = IntStream.rangeClosed(1, 1000000)
-                        .mapToObj(__ -> "a")
-                        .collect(Collectors.joining("")) + UUID.randomUUID().toString();
+                String payload = DataGenerator.payload(1000000, 'a') + generator.keyAt(i);
                 try {
                     TimeUnit.SECONDS.sleep(1);
                 } catch (InterruptedException e) {
@@ -0,0 +1,123 @@
+package com.snowball.training.concurrent.demo.question5;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 所有线程池共用一个采样线程，代替每次调用printStats都新建一个ScheduledExecutor的做法
+ * 每sample-seconds秒采样一次线程数、活跃线程数、队列长度和采样间隔内的活跃线程峰值，发布为Gauge(按pool标签区分)：
+ * executor.pool.size、executor.active、executor.active.peak、executor.queued
+ * logStats为true的线程池每次采样还会打印一行日志；线程池终止后自动移除并注销对应的Gauge
+ */
+@Slf4j
+@Component
+public class ThreadPoolSampler {
+
+    private static final class Sample {
+        final String name;
+        final ThreadPoolExecutor executor;
+        volatile boolean logStats;
+        final List<Meter> meters = new ArrayList<>();
+        volatile int poolSize;
+        volatile int active;
+        volatile int peakActive;
+        volatile int queued;
+
+        Sample(String name, ThreadPoolExecutor executor, boolean logStats) {
+            this.name = name;
+            this.executor = executor;
+            this.logStats = logStats;
+        }
+    }
+
+    @Value("${demo.executors.sample-seconds:1}")
+    private int sampleSeconds;
+
+    private final MeterRegistry registry;
+    private final Map<ThreadPoolExecutor, Sample> samples = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sampler;
+
+    public ThreadPoolSampler(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (sampleSeconds <= 0) {
+            return;
+        }
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "executor-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, 0, sampleSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+    }
+
+    /**
+     * 重复注册同一个线程池只会打开日志，不会重复注册Gauge
+     */
+    public void register(String name, ThreadPoolExecutor executor, boolean logStats) {
+        Sample registered = samples.computeIfAbsent(executor, e -> {
+            Sample sample = new Sample(name, e, logStats);
+            sample.meters.add(gauge("executor.pool.size", "threads in the pool", sample, s -> s.poolSize));
+            sample.meters.add(gauge("executor.active", "threads running tasks", sample, s -> s.active));
+            sample.meters.add(gauge("executor.active.peak", "max threads running tasks within the last sample interval", sample, s -> s.peakActive));
+            sample.meters.add(gauge("executor.queued", "tasks waiting in the queue", sample, s -> s.queued));
+            return sample;
+        });
+        if (logStats) {
+            registered.logStats = true;
+        }
+    }
+
+    private Gauge gauge(String metric, String description, Sample sample, ToDoubleFunction<Sample> value) {
+        return Gauge.builder(metric, sample, value)
+                .tag("pool", sample.name)
+                .description(description)
+                .register(registry);
+    }
+
+    void sample() {
+        for (Sample sample : samples.values()) {
+            try {
+                ThreadPoolExecutor executor = sample.executor;
+                if (executor.isTerminated()) {
+                    samples.remove(executor);
+                    sample.meters.forEach(registry::remove);
+                    continue;
+                }
+                sample.poolSize = executor.getPoolSize();
+                sample.active = executor.getActiveCount();
+                sample.peakActive = executor instanceof InstrumentedThreadPoolExecutor
+                        ? ((InstrumentedThreadPoolExecutor) executor).takePeakActive() : sample.active;
+                sample.queued = executor.getQueue().size();
+                if (sample.logStats) {
+                    log.info("{}: poolSize={} active={} peakActive={} queued={} completed={}",
+                            sample.name, sample.poolSize, sample.active, sample.peakActive, sample.queued, executor.getCompletedTaskCount());
+                }
+            } catch (RuntimeException e) {
+                log.warn("failed to sample thread pool {}", sample.name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.snowball.training.concurrent.demo.question1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeavyHitterSketchTest {
+
+    @Test
+    void heavyKeysRankFirstWithinErrorBound() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(3, 0.001, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            sketch.record("hot");
+            if (i % 2 == 0) {
+                sketch.record("warm");
+            }
+            sketch.record("cold-" + i);
+        }
+        List<HeavyHitterSketch.Entry> top = sketch.topK();
+        assertEquals(25_000, sketch.totalCount());
+        assertEquals(3, top.size());
+        assertEquals("hot", top.get(0).getKey());
+        assertEquals("warm", top.get(1).getKey());
+        assertTrue(top.get(0).getCount() >= 10_000);
+        assertTrue(top.get(0).getCount() - top.get(0).getError() <= 10_000);
+        assertTrue(top.get(1).getCount() >= 5_000);
+        assertTrue(top.get(1).getCount() - top.get(1).getError() <= 5_000);
+    }
+
+    @Test
+    void flushMergesEveryThreadBuffer() throws Exception {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(2, 0.001, 0.01);
+        int threads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String own = "thread-" + t;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    sketch.record("shared");
+                    sketch.record(own);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        // 每个线程缓冲区里都还有没合并的计数，topK要把它们都算进去
+        List<HeavyHitterSketch.Entry> top = sketch.topK();
+        assertEquals(2L * threads * 1000, sketch.totalCount());
+        assertEquals("shared", top.get(0).getKey());
+        assertEquals(threads * 1000L, top.get(0).getCount());
+    }
+
+    @Test
+    void rejectsNonPositiveK() {
+        assertThrows(IllegalArgumentException.class, () -> new HeavyHitterSketch(0, 0.01, 0.01));
+    }
+}
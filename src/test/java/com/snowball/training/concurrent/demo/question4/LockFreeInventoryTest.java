@@ -0,0 +1,69 @@
+package com.snowball.training.concurrent.demo.question4;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LockFreeInventoryTest {
+
+    @Test
+    void orderDeductsEveryItemOrNone() {
+        LockFreeInventory inventory = new LockFreeInventory(3, 2);
+        assertTrue(inventory.order(0, 1));
+        assertEquals(1, inventory.remaining(0));
+        assertEquals(1, inventory.remaining(1));
+        assertEquals(2, inventory.remaining(2));
+
+        // 商品0只剩1件，整单失败，商品2不能被扣
+        assertFalse(inventory.order(2, 0, 0));
+        assertEquals(1, inventory.remaining(0));
+        assertEquals(2, inventory.remaining(2));
+
+        assertTrue(inventory.order(2, 2));
+        assertEquals(0, inventory.remaining(2));
+        assertEquals(2, inventory.totalRemaining());
+        assertEquals(2L, inventory.stats().get("successes"));
+        assertEquals(1L, inventory.stats().get("outOfStock"));
+    }
+
+    @Test
+    void concurrentOrdersNeverOversell() throws Exception {
+        int items = 4;
+        int stock = 500;
+        LockFreeInventory inventory = new LockFreeInventory(items, stock);
+        int threads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger succeeded = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 1000; i++) {
+                    // 每单固定2件，可能是同一件商品
+                    if (inventory.order(random.nextInt(items), random.nextInt(items))) {
+                        succeeded.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        for (int i = 0; i < items; i++) {
+            assertTrue(inventory.remaining(i) >= 0);
+        }
+        assertEquals((long) items * stock, inventory.totalRemaining() + 2L * succeeded.get());
+        assertEquals((long) succeeded.get(), inventory.stats().get("successes"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.snowball.training.concurrent.demo.question5;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTest {
+
+    private static ConcurrencyLimiter aimd(int initialLimit, int minLimit, int maxLimit, long timeoutMillis) {
+        return new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD, initialLimit, minLimit, maxLimit, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static List<ConcurrencyLimiter.Permit> acquireAll(ConcurrencyLimiter limiter) {
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        ConcurrencyLimiter.Permit permit;
+        while ((permit = limiter.tryAcquire()) != null) {
+            permits.add(permit);
+        }
+        return permits;
+    }
+
+    @Test
+    void rejectsBeyondLimitAndReleasesOnce() {
+        ConcurrencyLimiter limiter = aimd(3, 1, 10, 60_000);
+        List<ConcurrencyLimiter.Permit> permits = acquireAll(limiter);
+        assertEquals(3, permits.size());
+        assertEquals(3, limiter.getInFlight());
+        assertNull(limiter.tryAcquire());
+
+        ConcurrencyLimiter.Permit first = permits.get(0);
+        first.onSuccess();
+        // 重复释放不能让inFlight变成负数
+        first.onSuccess();
+        first.onDropped();
+        assertEquals(2, limiter.getInFlight());
+        assertNotNull(limiter.tryAcquire());
+        assertEquals(2L, limiter.stats().get("rejected"));
+    }
+
+    @Test
+    void aimdGrowsOnlyWhenLimitIsUsed() {
+        ConcurrencyLimiter limiter = aimd(10, 1, 20, 60_000);
+        limiter.tryAcquire().onSuccess();
+        assertEquals(10, limiter.getLimit());
+
+        List<ConcurrencyLimiter.Permit> permits = acquireAll(limiter);
+        permits.get(permits.size() - 1).onSuccess();
+        assertEquals(11, limiter.getLimit());
+    }
+
+    @Test
+    void aimdBacksOffOnDropAndSlowResponse() throws InterruptedException {
+        ConcurrencyLimiter limiter = aimd(10, 1, 20, 1);
+        limiter.tryAcquire().onDropped();
+        assertEquals(9, limiter.getLimit());
+
+        ConcurrencyLimiter.Permit slow = limiter.tryAcquire();
+        TimeUnit.MILLISECONDS.sleep(5);
+        slow.onSuccess();
+        assertTrue(limiter.getLimit() < 9);
+    }
+
+    @Test
+    void limitStaysWithinBounds() {
+        ConcurrencyLimiter limiter = aimd(2, 2, 3, 60_000);
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire().onDropped();
+        }
+        assertEquals(2, limiter.getLimit());
+        for (int i = 0; i < 10; i++) {
+            List<ConcurrencyLimiter.Permit> permits = acquireAll(limiter);
+            permits.forEach(ConcurrencyLimiter.Permit::onSuccess);
+        }
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    void gradientBacksOffOnDrop() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.GRADIENT, 10, 1, 20, 0, TimeUnit.MILLISECONDS);
+        limiter.tryAcquire().onDropped();
+        assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    void rejectsInvalidLimits() {
+        assertThrows(IllegalArgumentException.class, () -> aimd(1, 0, 10, 0));
+        assertThrows(IllegalArgumentException.class, () -> aimd(5, 1, 4, 0));
+        assertThrows(IllegalArgumentException.class, () -> aimd(1, 2, 4, 0));
+    }
+}
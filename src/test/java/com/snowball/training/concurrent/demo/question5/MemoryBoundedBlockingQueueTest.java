@@ -0,0 +1,160 @@
+package com.snowball.training.concurrent.demo.question5;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 字节数的增减要和每条出队路径对上，三种准入策略在队列满时的行为
+ * 任务用字符串表示，大小就是字符串长度
+ */
+class MemoryBoundedBlockingQueueTest {
+
+    private static MemoryBoundedBlockingQueue<String> queue(long maxBytes, MemoryBoundedBlockingQueue.AdmissionPolicy policy, long timeoutMillis) {
+        return new MemoryBoundedBlockingQueue<>(maxBytes, String::length, policy, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void bytesFollowOfferAndPoll() {
+        MemoryBoundedBlockingQueue<String> queue = queue(100, MemoryBoundedBlockingQueue.AdmissionPolicy.SHED, 0);
+        assertTrue(queue.offer("aaaa"));
+        assertTrue(queue.offer("bbbbbb"));
+        assertEquals(10, queue.currentBytes());
+        assertEquals("aaaa", queue.poll());
+        assertEquals(6, queue.currentBytes());
+        assertEquals("bbbbbb", queue.poll());
+        assertEquals(0, queue.currentBytes());
+        assertNull(queue.poll());
+        assertEquals(10, queue.peakBytes());
+    }
+
+    @Test
+    void bytesFollowRemoveDrainToAndClear() {
+        MemoryBoundedBlockingQueue<String> queue = queue(100, MemoryBoundedBlockingQueue.AdmissionPolicy.SHED, 0);
+        queue.addAll(Arrays.asList("a", "bb", "ccc", "dddd"));
+        assertEquals(10, queue.currentBytes());
+
+        assertTrue(queue.remove("bb"));
+        assertFalse(queue.remove("bb"));
+        assertEquals(8, queue.currentBytes());
+
+        List<String> drained = new ArrayList<>();
+        assertEquals(1, queue.drainTo(drained, 1));
+        assertEquals(Arrays.asList("a"), drained);
+        assertEquals(7, queue.currentBytes());
+
+        assertEquals(2, queue.drainTo(drained));
+        assertEquals(Arrays.asList("a", "ccc", "dddd"), drained);
+        assertEquals(0, queue.currentBytes());
+
+        queue.addAll(Arrays.asList("eeeee", "ff"));
+        queue.clear();
+        assertEquals(0, queue.currentBytes());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void iteratorRemoveReleasesBytes() throws InterruptedException {
+        MemoryBoundedBlockingQueue<String> queue = queue(100, MemoryBoundedBlockingQueue.AdmissionPolicy.SHED, 0);
+        queue.put("aaa");
+        queue.put("bb");
+        java.util.Iterator<String> it = queue.iterator();
+        it.next();
+        it.remove();
+        assertEquals(2, queue.currentBytes());
+        assertEquals("bb", queue.take());
+        assertEquals(0, queue.currentBytes());
+    }
+
+    @Test
+    void shedRefusesWhenFullButAlwaysAcceptsIntoEmptyQueue() {
+        MemoryBoundedBlockingQueue<String> queue = queue(10, MemoryBoundedBlockingQueue.AdmissionPolicy.SHED, 0);
+        assertTrue(queue.offer("123456"));
+        assertFalse(queue.offer("123456"));
+        assertEquals(1, queue.refusedCount());
+        assertEquals(0, queue.throttledCount());
+        assertEquals(6, queue.currentBytes());
+
+        queue.clear();
+        // 单个超过上限的任务在队列空时也能进来
+        assertTrue(queue.offer("12345678901234567890"));
+        assertEquals(20, queue.currentBytes());
+    }
+
+    @Test
+    void timeoutRefusesAfterWaiting() {
+        MemoryBoundedBlockingQueue<String> queue = queue(10, MemoryBoundedBlockingQueue.AdmissionPolicy.TIMEOUT, 50);
+        assertTrue(queue.offer("123456"));
+        long begin = System.nanoTime();
+        assertFalse(queue.offer("123456"));
+        assertTrue(System.nanoTime() - begin >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(1, queue.throttledCount());
+        assertEquals(1, queue.refusedCount());
+        assertEquals(6, queue.currentBytes());
+    }
+
+    @Test
+    void timeoutAcceptsWhenSpaceFreesInTime() throws Exception {
+        MemoryBoundedBlockingQueue<String> queue = queue(10, MemoryBoundedBlockingQueue.AdmissionPolicy.TIMEOUT, 5000);
+        assertTrue(queue.offer("123456"));
+        ScheduledExecutorService consumer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            consumer.schedule((Callable<String>) queue::poll, 50, TimeUnit.MILLISECONDS);
+            assertTrue(queue.offer("abcdef"));
+            assertEquals(1, queue.throttledCount());
+            assertEquals(0, queue.refusedCount());
+            assertEquals("abcdef", queue.poll());
+        } finally {
+            consumer.shutdownNow();
+        }
+    }
+
+    @Test
+    void blockWaitsUntilSpaceFrees() throws Exception {
+        MemoryBoundedBlockingQueue<String> queue = queue(10, MemoryBoundedBlockingQueue.AdmissionPolicy.BLOCK, 0);
+        assertTrue(queue.offer("123456"));
+        ExecutorService producer = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> blocked = producer.submit(() -> queue.offer("abcdef"));
+            assertThrows(TimeoutException.class, () -> blocked.get(100, TimeUnit.MILLISECONDS));
+            assertEquals("123456", queue.poll());
+            assertTrue(blocked.get(5, TimeUnit.SECONDS));
+            assertEquals(6, queue.currentBytes());
+            assertEquals(1, queue.throttledCount());
+            assertEquals(0, queue.refusedCount());
+        } finally {
+            producer.shutdownNow();
+        }
+    }
+
+    @Test
+    void poolRejectsWhatTheQueueSheds() throws InterruptedException {
+        MemoryBoundedBlockingQueue<Runnable> queue = new MemoryBoundedBlockingQueue<>(2, task -> 1,
+                MemoryBoundedBlockingQueue.AdmissionPolicy.SHED, 0, TimeUnit.MILLISECONDS);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            pool.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            pool.execute(() -> { });
+            pool.execute(() -> { });
+            assertThrows(RejectedExecutionException.class, () -> pool.execute(() -> { }));
+            assertEquals(2, queue.currentBytes());
+        } finally {
+            release.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, queue.currentBytes());
+    }
+}
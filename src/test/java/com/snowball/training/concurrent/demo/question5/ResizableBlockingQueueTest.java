@@ -0,0 +1,84 @@
+package com.snowball.training.concurrent.demo.question5;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResizableBlockingQueueTest {
+
+    @Test
+    void shrinkKeepsQueuedItemsAndRefusesUntilBelowCapacity() {
+        ResizableBlockingQueue<Integer> queue = new ResizableBlockingQueue<>(4);
+        queue.addAll(Arrays.asList(1, 2, 3, 4));
+        queue.setCapacity(2);
+        assertEquals(4, queue.size());
+        assertEquals(0, queue.remainingCapacity());
+        assertFalse(queue.offer(5));
+
+        assertEquals(1, queue.poll());
+        assertEquals(2, queue.poll());
+        // 剩下的元素数等于新容量，仍然是满的
+        assertFalse(queue.offer(5));
+        assertEquals(3, queue.poll());
+        assertTrue(queue.offer(5));
+        assertEquals(Arrays.asList(4, 5), Arrays.asList(queue.toArray()));
+    }
+
+    @Test
+    void growWakesBlockedProducer() throws Exception {
+        ResizableBlockingQueue<Integer> queue = new ResizableBlockingQueue<>(1);
+        queue.put(1);
+        ExecutorService producer = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> blocked = producer.submit(() -> {
+                queue.put(2);
+                return null;
+            });
+            assertThrows(TimeoutException.class, () -> blocked.get(100, TimeUnit.MILLISECONDS));
+            queue.setCapacity(2);
+            blocked.get(5, TimeUnit.SECONDS);
+            assertEquals(2, queue.size());
+        } finally {
+            producer.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new ResizableBlockingQueue<Integer>(0));
+        ResizableBlockingQueue<Integer> queue = new ResizableBlockingQueue<>(1);
+        assertThrows(IllegalArgumentException.class, () -> queue.setCapacity(-1));
+        assertEquals(1, queue.getCapacity());
+    }
+
+    @Test
+    void poolRunsTasksQueuedBeforeShrink() throws InterruptedException {
+        ResizableBlockingQueue<Runnable> queue = new ResizableBlockingQueue<>(5);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger completed = new AtomicInteger();
+        pool.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            completed.incrementAndGet();
+        });
+        for (int i = 0; i < 5; i++) {
+            pool.execute(completed::incrementAndGet);
+        }
+        queue.setCapacity(1);
+        assertThrows(RejectedExecutionException.class, () -> pool.execute(completed::incrementAndGet));
+        assertEquals(5, queue.size());
+
+        release.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(6, completed.get());
+    }
+}